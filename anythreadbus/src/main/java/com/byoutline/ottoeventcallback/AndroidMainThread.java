@@ -0,0 +1,48 @@
+package com.byoutline.ottoeventcallback;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * {@link MainThread} backed by Android main {@link Looper}. Uses single cached
+ * {@link Handler} instead of creating one per post.
+ * <p>
+ * Looper is not touched until it is needed, so buses using this class can be
+ * created where Android main looper is not available (for example in unit
+ * tests), as long as they do not post.
+ */
+public final class AndroidMainThread implements MainThread {
+
+    private static final AndroidMainThread INSTANCE = new AndroidMainThread();
+
+    /**
+     * Created on first post from other thread. Racing threads may create
+     * equal handlers, which is harmless.
+     */
+    private volatile Handler handler;
+
+    private AndroidMainThread() {
+    }
+
+    /**
+     * @return shared instance.
+     */
+    public static MainThread get() {
+        return INSTANCE;
+    }
+
+    @Override
+    public boolean isCurrentThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    @Override
+    public void post(Runnable runnable) {
+        Handler current = handler;
+        if (current == null) {
+            current = new Handler(Looper.getMainLooper());
+            handler = current;
+        }
+        current.post(runnable);
+    }
+}
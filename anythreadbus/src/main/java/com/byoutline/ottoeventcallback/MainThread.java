@@ -0,0 +1,18 @@
+package com.byoutline.ottoeventcallback;
+
+/**
+ * Abstraction of Android main looper, so posting to main thread can be used
+ * (and tested) without Android classes.
+ */
+public interface MainThread {
+
+    /**
+     * @return true if it is called from main thread.
+     */
+    boolean isCurrentThread();
+
+    /**
+     * Schedules runnable to be executed later on main thread.
+     */
+    void post(Runnable runnable);
+}
@@ -0,0 +1,77 @@
+package com.byoutline.ottoeventcallback;
+
+import com.byoutline.eventcallback.IBus;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers events to given {@link IBus} on {@link MainThread}. Events posted
+ * from other threads are put in single queue and drained by one main thread
+ * message, so burst of events does not create message per event.
+ * <p>
+ * Events are delivered in order in which they were posted, also when main
+ * thread posts while events from other threads are still waiting.
+ */
+public final class MainThreadPoster {
+
+    private final MainThread mainThread;
+    private final IBus bus;
+    private final ConcurrentLinkedQueue<Object> pending = new ConcurrentLinkedQueue<Object>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param mainThread thread on which events should be delivered.
+     * @param bus        receives events on main thread.
+     */
+    public MainThreadPoster(MainThread mainThread, IBus bus) {
+        this.mainThread = mainThread;
+        this.bus = bus;
+    }
+
+    public void post(Object event) {
+        if (mainThread.isCurrentThread()) {
+            drain();
+            bus.post(event);
+        } else {
+            pending.add(event);
+            scheduleDrain();
+        }
+    }
+
+    public void postAll(Object[] events) {
+        if (mainThread.isCurrentThread()) {
+            drain();
+            for (Object event : events) {
+                bus.post(event);
+            }
+        } else {
+            for (Object event : events) {
+                pending.add(event);
+            }
+            scheduleDrain();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            mainThread.post(drainTask);
+        }
+    }
+
+    private void drain() {
+        // Cleared before polling, so event queued during drain either is polled
+        // here or schedules next drain.
+        drainScheduled.set(false);
+        Object event;
+        while ((event = pending.poll()) != null) {
+            bus.post(event);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.byoutline.ottoeventcallback;
 
-import android.os.Handler;
-import android.os.Looper;
+import com.byoutline.eventcallback.BatchBus;
 import com.byoutline.eventcallback.IBus;
 import com.squareup.otto.Bus;
 import com.squareup.otto.ThreadEnforcer;
@@ -10,27 +9,40 @@ import com.squareup.otto.ThreadEnforcer;
  * Wraps {@link Bus} it so it implements {@link IBus} and always posts on
  * Android main thread.
  */
-public class PostFromAnyThreadBus extends Bus implements IBus {
+public class PostFromAnyThreadBus extends Bus implements BatchBus {
+
+    private final MainThreadPoster poster;
 
     public PostFromAnyThreadBus() {
-        super(ThreadEnforcer.MAIN);
+        this(AndroidMainThread.get(), ThreadEnforcer.MAIN);
     }
 
-    @Override
-    public void post(final Object event) {
-        runInMainThread(new Runnable() {
+    public PostFromAnyThreadBus(MainThread mainThread, ThreadEnforcer enforcer) {
+        super(enforcer);
+        this.poster = new MainThreadPoster(mainThread, new IBus() {
             @Override
-            public void run() {
+            public void post(Object event) {
                 // We're now in the main loop, we can post now
                 PostFromAnyThreadBus.super.post(event);
             }
         });
     }
 
+    @Override
+    public void post(Object event) {
+        poster.post(event);
+    }
+
+    @Override
+    public void postAll(Object[] events) {
+        poster.postAll(events);
+    }
+
     public static void runInMainThread(Runnable runnable) {
-        if (Looper.myLooper() != Looper.getMainLooper()) {
+        MainThread mainThread = AndroidMainThread.get();
+        if (!mainThread.isCurrentThread()) {
             // We're not in the main loop, so we need to get into it.
-            (new Handler(Looper.getMainLooper())).post(runnable);
+            mainThread.post(runnable);
         } else {
             runnable.run();
         }
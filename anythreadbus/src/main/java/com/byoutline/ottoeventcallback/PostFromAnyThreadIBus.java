@@ -1,5 +1,6 @@
 package com.byoutline.ottoeventcallback;
 
+import com.byoutline.eventcallback.BatchBus;
 import com.byoutline.eventcallback.IBus;
 import com.squareup.otto.Bus;
 
@@ -7,25 +8,36 @@ import com.squareup.otto.Bus;
  * Wraps given {@link Bus} it so it implements {@link IBus} and always posts on
  * Android main thread.
  */
-public class PostFromAnyThreadIBus implements IBus {
+public class PostFromAnyThreadIBus implements BatchBus {
     
     private final Bus bus;
+    private final MainThreadPoster poster;
     
     public PostFromAnyThreadIBus(Bus bus) {
-        this.bus = bus;
+        this(bus, AndroidMainThread.get());
     }
-    
-    @Override
-    public void post(final Object event) {
-        PostFromAnyThreadBus.runInMainThread(new Runnable() {
+
+    public PostFromAnyThreadIBus(final Bus bus, MainThread mainThread) {
+        this.bus = bus;
+        this.poster = new MainThreadPoster(mainThread, new IBus() {
             @Override
-            public void run() {
+            public void post(Object event) {
                 // We're now in the main loop, we can post now
                 bus.post(event);
             }
         });
     }
     
+    @Override
+    public void post(Object event) {
+        poster.post(event);
+    }
+
+    @Override
+    public void postAll(Object[] events) {
+        poster.postAll(events);
+    }
+    
     public void register(Object object) {
         bus.register(object);
     }
@@ -0,0 +1,142 @@
+package com.byoutline.ottoeventcallback
+
+import com.byoutline.eventcallback.IBus
+import com.squareup.otto.Bus
+import com.squareup.otto.Subscribe
+import com.squareup.otto.ThreadEnforcer
+import spock.lang.Specification
+
+/**
+ * Main thread posting tested with {@link MainThread} that queues messages
+ * instead of using Android looper.
+ */
+class MainThreadPosterSpec extends Specification {
+
+    FakeMainThread mainThread = new FakeMainThread()
+    List received = []
+    MainThreadPoster poster = new MainThreadPoster(mainThread, { received << it } as IBus)
+
+    def "should schedule single message for burst of events from other thread"() {
+        when:
+        (1..50).each { poster.post(it) }
+
+        then:
+        mainThread.messages.size() == 1
+        received.isEmpty()
+
+        when:
+        mainThread.runMessages()
+
+        then:
+        received == (1..50).toList()
+    }
+
+    def "should deliver events queued from other thread before event posted on main thread"() {
+        given:
+        poster.post("background")
+
+        when:
+        mainThread.current = true
+        poster.post("main")
+
+        then:
+        received == ["background", "main"]
+
+        when:
+        mainThread.runMessages()
+
+        then:
+        received == ["background", "main"]
+    }
+
+    def "should schedule new message for events posted after drain"() {
+        when:
+        poster.postAll(["a", "b"] as Object[])
+        mainThread.runMessages()
+        poster.post("c")
+
+        then:
+        mainThread.messages.size() == 1
+
+        when:
+        mainThread.runMessages()
+
+        then:
+        received == ["a", "b", "c"]
+    }
+
+    def "PostFromAnyThreadBus should deliver to subscribers on main thread"() {
+        given:
+        def bus = new PostFromAnyThreadBus(mainThread, ThreadEnforcer.ANY)
+        def subscriber = new StringSubscriber()
+        bus.register(subscriber)
+
+        when:
+        bus.post("event")
+
+        then:
+        subscriber.received.isEmpty()
+
+        when:
+        mainThread.runMessages()
+
+        then:
+        subscriber.received == ["event"]
+    }
+
+    def "PostFromAnyThreadIBus should post directly when called on main thread"() {
+        given:
+        def subscriber = new StringSubscriber()
+        def otto = new Bus(ThreadEnforcer.ANY)
+        def bus = new PostFromAnyThreadIBus(otto, mainThread)
+        bus.register(subscriber)
+        mainThread.current = true
+
+        when:
+        bus.post("event")
+
+        then:
+        subscriber.received == ["event"]
+        mainThread.messages.isEmpty()
+    }
+
+    def "default buses should be created without touching Android looper"() {
+        when:
+        new PostFromAnyThreadBus()
+        new PostFromAnyThreadIBus(new Bus(ThreadEnforcer.ANY))
+
+        then:
+        notThrown(Throwable)
+    }
+
+    static class FakeMainThread implements MainThread {
+        boolean current = false
+        List<Runnable> messages = []
+
+        boolean isCurrentThread() {
+            return current
+        }
+
+        void post(Runnable runnable) {
+            messages << runnable
+        }
+
+        void runMessages() {
+            boolean wasCurrent = current
+            current = true
+            while (!messages.isEmpty()) {
+                messages.remove(0).run()
+            }
+            current = wasCurrent
+        }
+    }
+
+    static class StringSubscriber {
+        List<String> received = []
+
+        @Subscribe
+        public void onString(String event) {
+            received << event
+        }
+    }
+}
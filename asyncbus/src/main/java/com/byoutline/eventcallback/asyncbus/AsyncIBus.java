@@ -0,0 +1,212 @@
+package com.byoutline.eventcallback.asyncbus;
+
+import com.byoutline.eventcallback.BatchBus;
+import com.byoutline.eventcallback.IBus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Wraps given {@link IBus} so events are queued in bounded lock-free ring buffer
+ * and delivered in batches from single dedicated dispatcher thread. Posting
+ * thread (for example network thread that completes callback) returns as soon
+ * as event is queued.
+ * <p>
+ * Events posted from one thread are delivered in posting order. What happens
+ * when queue is full is decided by {@link BackpressurePolicy}.
+ * <p>
+ * Since events are delivered after posting thread moves on, response events
+ * should be registered with {@code postNewResponseEvents}, not shared instances
+ * from {@code postResponseEvents}, which next completion may overwrite before
+ * subscribers read them.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public class AsyncIBus implements BatchBus {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncIBus.class.getName());
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final IBus bus;
+    private final RingBuffer queue;
+    private final BackpressurePolicy policy;
+    private final Object[] batch;
+    private final Thread dispatcher;
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean running = true;
+    private volatile boolean dispatcherWaiting;
+
+    /**
+     * Creates bus with {@link #DEFAULT_CAPACITY} that blocks posting thread when full.
+     *
+     * @param bus bus that will receive events on dispatcher thread.
+     */
+    public AsyncIBus(IBus bus) {
+        this(bus, DEFAULT_CAPACITY, BackpressurePolicy.BLOCK);
+    }
+
+    /**
+     * @param bus      bus that will receive events on dispatcher thread.
+     * @param capacity maximum number of queued events, rounded up to power of two (at least 2).
+     * @param policy   decides what happens with events posted when queue is full.
+     */
+    public AsyncIBus(IBus bus, int capacity, BackpressurePolicy policy) {
+        this(bus, capacity, policy, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param bus          bus that will receive events on dispatcher thread.
+     * @param capacity     maximum number of queued events, rounded up to power of two (at least 2).
+     * @param policy       decides what happens with events posted when queue is full.
+     * @param maxBatchSize maximum number of events taken from queue at once.
+     */
+    public AsyncIBus(IBus bus, int capacity, BackpressurePolicy policy, int maxBatchSize) {
+        if (bus == null || policy == null) {
+            throw new IllegalArgumentException("bus and policy must not be null");
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        this.bus = bus;
+        this.queue = new RingBuffer(capacity);
+        this.policy = policy;
+        this.batch = new Object[Math.min(maxBatchSize, queue.capacity())];
+        this.dispatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatchLoop();
+            }
+        }, "AsyncIBus-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @Override
+    public void post(Object event) {
+        enqueue(event);
+        wakeDispatcher();
+    }
+
+    @Override
+    public void postAll(Object[] events) {
+        for (Object event : events) {
+            enqueue(event);
+        }
+        wakeDispatcher();
+    }
+
+    /**
+     * Stops accepting new events. Events that were already queued will still be
+     * delivered before dispatcher thread ends.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(dispatcher);
+    }
+
+    /**
+     * @return number of events discarded by {@link BackpressurePolicy#DROP_OLDEST}.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private void enqueue(Object event) {
+        if (!running) {
+            throw new IllegalStateException("Bus was shut down, cannot post: " + event);
+        }
+        if (queue.offer(event)) {
+            return;
+        }
+        switch (policy) {
+            case BLOCK:
+                if (Thread.currentThread() == dispatcher) {
+                    // subscriber posted from dispatcher, which is the only thread that could make room
+                    deliver(event);
+                    break;
+                }
+                do {
+                    if (!running) {
+                        throw new IllegalStateException("Bus was shut down, cannot post: " + event);
+                    }
+                    wakeDispatcher();
+                    LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                } while (!queue.offer(event));
+                break;
+            case DROP_OLDEST:
+                do {
+                    if (queue.poll() != null) {
+                        droppedCount.incrementAndGet();
+                    }
+                } while (!queue.offer(event));
+                break;
+            case CALLER_RUNS:
+                deliver(event);
+                break;
+        }
+    }
+
+    private void wakeDispatcher() {
+        if (dispatcherWaiting) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    private void dispatchLoop() {
+        while (true) {
+            int size = drainBatch();
+            if (size > 0) {
+                deliverBatch(size);
+                continue;
+            }
+            if (!running && queue.isEmpty()) {
+                return;
+            }
+            dispatcherWaiting = true;
+            if (running && queue.isEmpty()) {
+                LockSupport.park(this);
+            }
+            dispatcherWaiting = false;
+        }
+    }
+
+    private int drainBatch() {
+        int size = 0;
+        while (size < batch.length) {
+            Object event = queue.poll();
+            if (event == null) {
+                break;
+            }
+            batch[size++] = event;
+        }
+        return size;
+    }
+
+    private void deliverBatch(int size) {
+        for (int i = 0; i < size; i++) {
+            Object event = batch[i];
+            batch[i] = null;
+            deliver(event);
+        }
+    }
+
+    private void deliver(Object event) {
+        try {
+            bus.post(event);
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Subscriber failed to handle event: " + event, ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncIBus{" + "bus=" + bus + ", policy=" + policy + ", capacity=" + queue.capacity() + '}';
+    }
+}
@@ -0,0 +1,24 @@
+package com.byoutline.eventcallback.asyncbus;
+
+/**
+ * Decides what {@link AsyncIBus} does with event posted when its queue is full.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public enum BackpressurePolicy {
+    /**
+     * Posting thread waits until dispatcher makes room for event. Events
+     * posted by subscribers (from dispatcher thread) are delivered directly
+     * instead, like with {@link #CALLER_RUNS}.
+     */
+    BLOCK,
+    /**
+     * Oldest event that was not yet dispatched is discarded.
+     */
+    DROP_OLDEST,
+    /**
+     * Event is delivered directly from posting thread. It may be delivered
+     * before events that are still waiting in queue.
+     */
+    CALLER_RUNS
+}
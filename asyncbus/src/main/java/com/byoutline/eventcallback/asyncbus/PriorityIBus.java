@@ -0,0 +1,60 @@
+package com.byoutline.eventcallback.asyncbus;
+
+import com.byoutline.eventcallback.IBus;
+import com.byoutline.eventcallback.Priority;
+import com.byoutline.eventcallback.PriorityBus;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Wraps given {@link IBus} so {@link Priority#LOW} events are not delivered
+ * on posting thread, but handed to separate executor. This way low value
+ * events (like analytics) do not delay events that update UI. On Android
+ * executor may for example post to main thread {@code MessageQueue.IdleHandler}.
+ * <p>
+ * Events of other priorities are delivered immediately. Callbacks post events
+ * of single action group from highest to lowest priority.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public class PriorityIBus implements PriorityBus {
+
+    private final IBus bus;
+    private final Executor lowPriorityExecutor;
+
+    /**
+     * @param bus                 bus that will receive events.
+     * @param lowPriorityExecutor executor that will post low priority events to bus.
+     */
+    public PriorityIBus(IBus bus, Executor lowPriorityExecutor) {
+        if (bus == null || lowPriorityExecutor == null) {
+            throw new IllegalArgumentException("bus and lowPriorityExecutor must not be null");
+        }
+        this.bus = bus;
+        this.lowPriorityExecutor = lowPriorityExecutor;
+    }
+
+    @Override
+    public void post(Object event) {
+        bus.post(event);
+    }
+
+    @Override
+    public void post(final Object event, Priority priority) {
+        if (priority != Priority.LOW) {
+            bus.post(event);
+            return;
+        }
+        lowPriorityExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                bus.post(event);
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "PriorityIBus{" + "bus=" + bus + ", lowPriorityExecutor=" + lowPriorityExecutor + '}';
+    }
+}
@@ -0,0 +1,134 @@
+package com.byoutline.eventcallback.asyncbus
+
+import com.byoutline.eventcallback.IBus
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class AsyncIBusSpec extends Specification {
+
+    def "should deliver events from every thread in posting order"() {
+        given:
+        def received = new ConcurrentLinkedQueue()
+        def allReceived = new CountDownLatch(4000)
+        def bus = new AsyncIBus({ received << it; allReceived.countDown() } as IBus, 16, BackpressurePolicy.BLOCK)
+
+        when:
+        def threads = (0..<4).collect { thread ->
+            Thread.start {
+                (0..<1000).each { bus.post([thread, it]) }
+            }
+        }
+        threads*.join()
+
+        then:
+        allReceived.await(10, TimeUnit.SECONDS)
+        (0..<4).every { thread -> received.findAll { it[0] == thread }.collect { it[1] } == (0..<1000).toList() }
+
+        cleanup:
+        bus.shutdown()
+    }
+
+    def "should deliver batch in order"() {
+        given:
+        def received = new ConcurrentLinkedQueue()
+        def allReceived = new CountDownLatch(3)
+        def bus = new AsyncIBus({ received << it; allReceived.countDown() } as IBus)
+
+        when:
+        bus.postAll(["a", "b", "c"] as Object[])
+
+        then:
+        allReceived.await(10, TimeUnit.SECONDS)
+        received.toList() == ["a", "b", "c"]
+
+        cleanup:
+        bus.shutdown()
+    }
+
+    def "should drop oldest events when full"() {
+        given:
+        def dispatcherBlocked = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def received = new ConcurrentLinkedQueue()
+        def bus = new AsyncIBus({
+            if (it == "blocker") {
+                dispatcherBlocked.countDown()
+                release.await()
+            } else {
+                received << it
+            }
+        } as IBus, 2, BackpressurePolicy.DROP_OLDEST)
+
+        when:
+        bus.post("blocker")
+        dispatcherBlocked.await(10, TimeUnit.SECONDS)
+        (1..5).each { bus.post(it) }
+        release.countDown()
+        bus.shutdown()
+        bus.dispatcher.join(10000)
+
+        then:
+        bus.droppedCount == 3
+        received.toList() == [4, 5]
+    }
+
+    def "should deliver on posting thread when full and policy is caller runs"() {
+        given:
+        def dispatcherBlocked = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def deliveryThreads = new ConcurrentLinkedQueue()
+        def bus = new AsyncIBus({
+            if (it == "blocker") {
+                dispatcherBlocked.countDown()
+                release.await()
+            } else {
+                deliveryThreads << [it, Thread.currentThread()]
+            }
+        } as IBus, 2, BackpressurePolicy.CALLER_RUNS)
+
+        when:
+        bus.post("blocker")
+        dispatcherBlocked.await(10, TimeUnit.SECONDS)
+        bus.post("queued1")
+        bus.post("queued2")
+        bus.post("direct")
+
+        then:
+        deliveryThreads.toList() == [["direct", Thread.currentThread()]]
+
+        cleanup:
+        release.countDown()
+        bus.shutdown()
+    }
+
+    def "subscriber posting into full buffer with block policy should not deadlock"() {
+        given:
+        def received = new ConcurrentLinkedQueue()
+        def allReceived = new CountDownLatch(6)
+        AsyncIBus bus
+        bus = new AsyncIBus({
+            received << it
+            allReceived.countDown()
+            if (it == "trigger") {
+                (1..5).each { bus.post(it) }
+            }
+        } as IBus, 2, BackpressurePolicy.BLOCK)
+
+        when:
+        bus.post("trigger")
+
+        then:
+        allReceived.await(10, TimeUnit.SECONDS)
+        received.toList().containsAll(["trigger", 1, 2, 3, 4, 5])
+
+        cleanup:
+        bus.shutdown()
+    }
+}
@@ -0,0 +1,46 @@
+package com.byoutline.eventcallback.asyncbus
+
+import com.byoutline.eventcallback.IBus
+import com.byoutline.eventcallback.Priority
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.Executor
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class PriorityIBusSpec extends Specification {
+    IBus delegate = Mock()
+    List<Runnable> deferred = []
+    PriorityIBus bus = new PriorityIBus(delegate, { deferred << it } as Executor)
+
+    @Unroll
+    def "#priority event should be posted immediately"() {
+        when:
+        bus.post("event", priority)
+
+        then:
+        1 * delegate.post("event")
+        deferred.empty
+
+        where:
+        priority << [Priority.HIGH, Priority.NORMAL]
+    }
+
+    def "low priority event should be posted by executor"() {
+        when:
+        bus.post("event", Priority.LOW)
+
+        then:
+        0 * delegate.post(_)
+        deferred.size() == 1
+
+        when:
+        deferred[0].run()
+
+        then:
+        1 * delegate.post("event")
+    }
+}
@@ -0,0 +1,16 @@
+package com.byoutline.eventcallback;
+
+/**
+ * Bus that can accept many events in one call. Events are delivered in the
+ * same order as they appear in array.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface BatchBus extends IBus {
+
+    /**
+     * @param events events to be posted. Implementations must not modify passed
+     *               array nor keep reference to it after method returns.
+     */
+    void postAll(Object[] events);
+}
@@ -0,0 +1,18 @@
+package com.byoutline.eventcallback;
+
+/**
+ * Importance of posted event. Within single action group events are posted
+ * from highest to lowest priority, keeping registration order for events of
+ * equal priority. {@link PriorityBus} implementations may additionally delay
+ * low priority events.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public enum Priority {
+    HIGH,
+    NORMAL,
+    /**
+     * For events that are not needed to update UI, like analytics.
+     */
+    LOW
+}
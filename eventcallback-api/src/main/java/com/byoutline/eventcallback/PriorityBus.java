@@ -0,0 +1,12 @@
+package com.byoutline.eventcallback;
+
+/**
+ * Bus that receives priority of each posted event. Events posted with
+ * {@link #post(Object)} have {@link Priority#NORMAL} priority.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface PriorityBus extends IBus {
+
+    void post(Object event, Priority priority);
+}
@@ -0,0 +1,18 @@
+package com.byoutline.eventcallback;
+
+/**
+ * Optional interface for session id providers (<code>Provider&lt;String&gt;</code>)
+ * that can cheaply tell when session changes. If session id provider also
+ * implements this interface, callbacks compare versions instead of calling
+ * <code>get()</code> and comparing ids on every completion.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface SessionVersionProvider {
+
+    /**
+     * @return number that must increase every time session id changes,
+     * for example value of volatile field or {@code AtomicLong}.
+     */
+    long getSessionVersion();
+}
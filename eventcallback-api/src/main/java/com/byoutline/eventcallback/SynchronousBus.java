@@ -0,0 +1,11 @@
+package com.byoutline.eventcallback;
+
+/**
+ * Marks {@link IBus} that delivers event to all subscribers before
+ * {@link #post(Object)} returns. Only events posted to such bus can be
+ * returned to pool and reused right after post.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface SynchronousBus extends IBus {
+}
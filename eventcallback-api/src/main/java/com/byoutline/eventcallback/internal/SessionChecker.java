@@ -1,20 +1,39 @@
 package com.byoutline.eventcallback.internal;
 
+import com.byoutline.eventcallback.SessionVersionProvider;
+
 import javax.inject.Provider;
 
 /**
  * Helper class that checks if it is still the same session;
+ * <p>
+ * If session id provider implements {@link SessionVersionProvider} session id
+ * is read only once, on creation, and later checks compare session versions.
  *
  * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
  */
 public class SessionChecker {
 
+    private static final long DIFFERENT_SESSION = Long.MIN_VALUE;
+
     private final Provider<String> sessionIdProvider;
+    private final SessionVersionProvider sessionVersionProvider;
+    private final long callbackStartSessionVersion;
     public final String callbackStartSessionId;
 
     public SessionChecker(Provider<String> sessionIdProvider, String callbackStartSessionId) {
         this.sessionIdProvider = sessionIdProvider;
         this.callbackStartSessionId = callbackStartSessionId;
+        if (sessionIdProvider instanceof SessionVersionProvider) {
+            this.sessionVersionProvider = (SessionVersionProvider) sessionIdProvider;
+            // read version before id, so if session changes in between we
+            // report different session rather than miss the change
+            long version = sessionVersionProvider.getSessionVersion();
+            this.callbackStartSessionVersion = isSameSessionId() ? version : DIFFERENT_SESSION;
+        } else {
+            this.sessionVersionProvider = null;
+            this.callbackStartSessionVersion = DIFFERENT_SESSION;
+        }
     }
 
     /**
@@ -24,6 +43,14 @@ public class SessionChecker {
      * @return True if we are still during same session, false otherwise.
      */
     public boolean isSameSession() {
+        if (sessionVersionProvider != null) {
+            return callbackStartSessionVersion != DIFFERENT_SESSION
+                    && callbackStartSessionVersion == sessionVersionProvider.getSessionVersion();
+        }
+        return isSameSessionId();
+    }
+
+    private boolean isSameSessionId() {
         String sessionId = sessionIdProvider.get();
         if (callbackStartSessionId == null) {
             return sessionId == null;
@@ -0,0 +1,23 @@
+package com.byoutline.eventcallback.benchmarks;
+
+import com.byoutline.eventcallback.IBus;
+import com.byoutline.eventcallback.SynchronousBus;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link IBus} that does no work except consuming posted events, so benchmarks
+ * measure only cost of callback itself.
+ */
+final class BlackholeBus implements SynchronousBus {
+
+    private final Blackhole blackhole;
+
+    BlackholeBus(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void post(Object event) {
+        blackhole.consume(event);
+    }
+}
@@ -0,0 +1,60 @@
+package com.byoutline.eventcallback.benchmarks;
+
+import com.byoutline.eventcallback.IBus;
+import com.byoutline.ottoeventcallback.OttoBus;
+import com.byoutline.ottoeventcallback.OttoIBus;
+import com.squareup.otto.Bus;
+import com.squareup.otto.Subscribe;
+import com.squareup.otto.ThreadEnforcer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures cost of single post on {@link IBus} implementations with one subscriber.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BusBenchmark {
+
+    @Param({"noop", "OttoBus", "OttoIBus"})
+    public String busType;
+
+    private IBus bus;
+    private final String event = "event";
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        if ("noop".equals(busType)) {
+            bus = new BlackholeBus(blackhole);
+        } else if ("OttoBus".equals(busType)) {
+            OttoBus ottoBus = new OttoBus();
+            ottoBus.register(new Subscriber(blackhole));
+            bus = ottoBus;
+        } else {
+            OttoIBus ottoIBus = new OttoIBus(new Bus(ThreadEnforcer.ANY));
+            ottoIBus.register(new Subscriber(blackhole));
+            bus = ottoIBus;
+        }
+    }
+
+    @Benchmark
+    public void post() {
+        bus.post(event);
+    }
+
+    public static class Subscriber {
+        private final Blackhole blackhole;
+
+        Subscriber(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Subscribe
+        public void onEvent(String event) {
+            blackhole.consume(event);
+        }
+    }
+}
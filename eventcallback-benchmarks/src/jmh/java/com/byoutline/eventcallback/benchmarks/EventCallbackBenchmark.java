@@ -0,0 +1,137 @@
+package com.byoutline.eventcallback.benchmarks;
+
+import com.byoutline.eventcallback.CallbackConfig;
+import com.byoutline.eventcallback.EventCallback;
+import com.byoutline.eventcallback.EventCallbackBuilder;
+import com.byoutline.eventcallback.EventCallbackTemplate;
+import com.byoutline.eventcallback.ResponseEvent;
+import com.byoutline.eventcallback.ResponseEventImpl;
+import com.byoutline.eventcallback.SuccessHandler;
+import com.byoutline.eventcallback.util.StubSessionIdProvider;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import retrofit.RetrofitError;
+import retrofit.client.Header;
+import retrofit.client.Response;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures cost of creating and completing {@link EventCallback}, depending on
+ * number of configured actions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventCallbackBenchmark {
+
+    @Param({"0", "1", "10"})
+    public int eventCount;
+
+    @Param({"0", "4"})
+    public int boolCount;
+
+    @Param({"0", "3"})
+    public int statusCodeCount;
+
+    @Param({"0", "20"})
+    public int sharedHandlerCount;
+
+    private CallbackConfig config;
+    private EventCallbackTemplate<String, String> template;
+    private EventCallback<String, String> callback;
+    private Response successResponse;
+    private RetrofitError error;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        Map<Class, SuccessHandler> handlers = new LinkedHashMap<Class, SuccessHandler>();
+        for (int i = 0; i < sharedHandlerCount; i++) {
+            // only CharSequence handler matches String response
+            Class type = i == 0 ? CharSequence.class : HandlerTypes.TYPES[i - 1];
+            handlers.put(type, new SuccessHandler<Object>() {
+                @Override
+                public void onCallSuccess(Object response) {
+                    blackhole.consume(response);
+                }
+            });
+        }
+        if (handlers.size() != sharedHandlerCount) {
+            throw new IllegalStateException("Registered " + handlers.size() + " distinct handlers instead of "
+                    + sharedHandlerCount);
+        }
+        config = new CallbackConfig(false, new BlackholeBus(blackhole), new StubSessionIdProvider(), handlers);
+        template = newBuilder().buildTemplate();
+        callback = template.newCallback();
+        successResponse = new Response("url", 200, "OK", Collections.<Header>emptyList(), null);
+        error = RetrofitError.httpError("url", new Response("url", 500, "Server error",
+                Collections.<Header>emptyList(), null), null, String.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private EventCallbackBuilder<String, String> newBuilder() {
+        EventCallbackBuilder<String, String> builder = EventCallback.builder(config, new TypeToken<String>() {
+        });
+        for (int i = 0; i < eventCount; i++) {
+            builder.onCreate().postEvents(new Object()).validBetweenSessions()
+                    .onSuccess().postEvents(new Object()).validThisSessionOnly()
+                    .onSuccess().postResponseEvents(new ResponseEventImpl<String>()).validBetweenSessions()
+                    .onError().postEvents(new Object()).validBetweenSessions()
+                    .onError().postResponseEvents(new ResponseEventImpl<String>()).validThisSessionOnly();
+        }
+        for (int i = 0; i < boolCount; i++) {
+            AtomicBoolean bool = new AtomicBoolean();
+            builder.onCreate().setAtomicBooleans(bool).toTrue()
+                    .onSuccess().setAtomicBooleans(bool).toFalse()
+                    .onError().setAtomicBooleans(bool).toFalse();
+        }
+        for (int i = 0; i < statusCodeCount; i++) {
+            builder.onStatusCodes(200 + i, 500 + i).postEvents(new Object()).validBetweenSessions();
+        }
+        return builder;
+    }
+
+    @Benchmark
+    public EventCallback<String, String> build() {
+        return newBuilder().build();
+    }
+
+    @Benchmark
+    public EventCallback<String, String> newCallbackFromTemplate() {
+        return template.newCallback();
+    }
+
+    @Benchmark
+    public void success() {
+        callback.success("response", successResponse);
+    }
+
+    @Benchmark
+    public void failure() {
+        callback.failure(error);
+    }
+
+    /**
+     * Types that do not match String response.
+     */
+    private static final class HandlerTypes {
+        /**
+         * Distinct types that String response does not match, so every handler is a separate map entry.
+         */
+        static final Class[] TYPES = {Integer.class, Long.class, Double.class, Float.class, Short.class, Byte.class,
+                Character.class, Boolean.class, BigDecimal.class, BigInteger.class, Date.class, AtomicBoolean.class,
+                Map.class, List.class, Set.class, Queue.class, Runnable.class, Thread.class, ResponseEvent.class,
+                Iterable.class};
+    }
+}
@@ -0,0 +1,32 @@
+package com.byoutline.eventcallback;
+
+import retrofit.Callback;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Connects {@link CallBatcher} with endpoint that returns many results in one
+ * response, for example {@code GET /items?ids=1,2,3}.
+ *
+ * @param <K> Type of key that identifies single request.
+ * @param <S> Type of single result.
+ * @param <B> Type of batch response returned by server.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface BatchAdapter<K, S, B> {
+
+    /**
+     * Starts asynchronous Retrofit call for all keys.
+     *
+     * @param keys distinct keys of batched requests, in order of registration.
+     */
+    void invoke(@Nonnull List<K> keys, @Nonnull Callback<B> callback);
+
+    /**
+     * @return result for single key, or null if batch response does not contain it.
+     */
+    @Nullable
+    S resultFor(@Nonnull K key, @Nonnull B batchResult);
+}
@@ -0,0 +1,238 @@
+package com.byoutline.eventcallback;
+
+import com.byoutline.eventcallback.circuitbreaker.CircuitBreaker;
+import com.byoutline.eventcallback.util.Scheduler;
+import org.apache.commons.lang3.Validate;
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Header;
+import retrofit.client.Response;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups calls made within short window into single batch request. Batch is
+ * sent when window started by its first call passes, or as soon as it reaches
+ * maximum size. Result of batch is split by {@link BatchAdapter} and passed to
+ * success of every batched callback, so each of them executes its own onSuccess
+ * actions. If batch call fails, all its callbacks receive the failure.
+ * <p>
+ * Batch is a single request, so for {@link EventCallback}s its outcome is
+ * recorded once by every distinct circuit breaker, and failed batch is not
+ * retried by retry policies of batched callbacks. Call batcher again instead.
+ * <p>
+ * Callbacks whose key is missing from batch response fail with synthetic
+ * 404 error, so their onError and status code actions are executed.
+ * Calls with the same key in one batch share its result, but the key is sent once.
+ *
+ * @param <K> Type of key that identifies single request.
+ * @param <S> Type of single result.
+ * @param <B> Type of batch response returned by server.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class CallBatcher<K, S, B> {
+
+    public static final int MISSING_RESULT_STATUS = 404;
+
+    private final BatchAdapter<K, S, B> adapter;
+    private final Scheduler scheduler;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    /**
+     * Batch that accepts new calls, or null if none was started. Guarded by this.
+     */
+    private Batch pending;
+
+    /**
+     * @param adapter      starts batch calls and splits their results.
+     * @param scheduler    sends batch after window passes.
+     * @param window       how long calls are collected after first call of batch.
+     * @param unit         unit of window.
+     * @param maxBatchSize number of distinct keys after which batch is sent immediately.
+     */
+    public CallBatcher(@Nonnull BatchAdapter<K, S, B> adapter, @Nonnull Scheduler scheduler,
+                       long window, @Nonnull TimeUnit unit, int maxBatchSize) {
+        Validate.isTrue(window >= 0, "window cannot be negative: %d", window);
+        Validate.isTrue(maxBatchSize > 0, "maxBatchSize must be positive: %d", maxBatchSize);
+        this.adapter = adapter;
+        this.scheduler = scheduler;
+        this.windowNanos = unit.toNanos(window);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Adds call to current batch, starting new batch if needed. If callback
+     * is {@link EventCallback} whose circuit breaker is open, it fails
+     * immediately instead.
+     *
+     * @param key      identity of single request.
+     * @param callback receives result for key, usually {@link EventCallback}.
+     */
+    public void call(@Nonnull K key, @Nonnull Callback<S> callback) {
+        if (callback instanceof EventCallback) {
+            EventCallback<S, ?> eventCallback = (EventCallback<S, ?>) callback;
+            RetrofitError rejection = eventCallback.circuitBreakerRejection();
+            if (rejection != null) {
+                eventCallback.completeFailure(rejection);
+                return;
+            }
+        }
+        Batch full = null;
+        Batch started = null;
+        synchronized (this) {
+            if (pending == null) {
+                pending = new Batch();
+                started = pending;
+            }
+            pending.add(key, callback);
+            if (pending.callbacks.size() >= maxBatchSize) {
+                full = pending;
+                pending = null;
+            }
+        }
+        if (full != null) {
+            full.send();
+        } else if (started != null) {
+            scheduleSend(started);
+        }
+    }
+
+    private void scheduleSend(final Batch batch) {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                sendIfPending(batch);
+            }
+        }, windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void sendIfPending(Batch batch) {
+        synchronized (this) {
+            if (pending != batch) {
+                // already sent because it became full
+                return;
+            }
+            pending = null;
+        }
+        batch.send();
+    }
+
+    /**
+     * Sends current batch without waiting for window to pass.
+     */
+    public void flush() {
+        Batch batch;
+        synchronized (this) {
+            batch = pending;
+            pending = null;
+        }
+        if (batch != null) {
+            batch.send();
+        }
+    }
+
+    /**
+     * @return number of distinct keys waiting in current batch.
+     */
+    public synchronized int pendingSize() {
+        return pending == null ? 0 : pending.callbacks.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CallBatcher{" + "windowNanos=" + windowNanos + ", maxBatchSize=" + maxBatchSize
+                + ", pendingSize=" + pendingSize() + '}';
+    }
+
+    private static RetrofitError missingResultError(Response batchResponse, Object key) {
+        String url = batchResponse == null ? "batch" : batchResponse.getUrl();
+        Response response = new Response(url, MISSING_RESULT_STATUS, "No result for " + key + " in batch",
+                batchResponse == null ? new ArrayList<Header>() : batchResponse.getHeaders(), null);
+        return RetrofitError.httpError(url, response, null, null);
+    }
+
+    private static Set<CircuitBreaker> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<CircuitBreaker, Boolean>());
+    }
+
+    /**
+     * Callbacks of single batch. Modified only while pending, under lock of
+     * batcher, and read only after it was sent.
+     */
+    private final class Batch implements Callback<B> {
+        final Map<K, List<Callback<S>>> callbacks = new LinkedHashMap<K, List<Callback<S>>>();
+
+        void add(K key, Callback<S> callback) {
+            List<Callback<S>> forKey = callbacks.get(key);
+            if (forKey == null) {
+                forKey = new ArrayList<Callback<S>>(1);
+                callbacks.put(key, forKey);
+            }
+            forKey.add(callback);
+        }
+
+        void send() {
+            adapter.invoke(new ArrayList<K>(callbacks.keySet()), this);
+        }
+
+        @Override
+        public void success(B batchResult, Response response) {
+            Set<CircuitBreaker> recorded = newIdentitySet();
+            for (Map.Entry<K, List<Callback<S>>> entry : callbacks.entrySet()) {
+                S result = batchResult == null ? null : adapter.resultFor(entry.getKey(), batchResult);
+                RetrofitError missingError = result == null ? missingResultError(response, entry.getKey()) : null;
+                for (Callback<S> callback : entry.getValue()) {
+                    if (!(callback instanceof EventCallback)) {
+                        if (missingError == null) {
+                            callback.success(result, response);
+                        } else {
+                            callback.failure(missingError);
+                        }
+                        continue;
+                    }
+                    EventCallback<S, ?> eventCallback = (EventCallback<S, ?>) callback;
+                    CircuitBreaker circuitBreaker = eventCallback.circuitBreaker();
+                    if (recorded.add(circuitBreaker) && circuitBreaker != null) {
+                        circuitBreaker.onSuccess();
+                    }
+                    if (missingError == null) {
+                        eventCallback.replay(result, response);
+                    } else {
+                        eventCallback.completeFailure(missingError);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void failure(RetrofitError error) {
+            Set<CircuitBreaker> recorded = newIdentitySet();
+            for (List<Callback<S>> forKey : callbacks.values()) {
+                for (Callback<S> callback : forKey) {
+                    if (!(callback instanceof EventCallback)) {
+                        callback.failure(error);
+                        continue;
+                    }
+                    EventCallback<S, ?> eventCallback = (EventCallback<S, ?>) callback;
+                    if (recorded.add(eventCallback.circuitBreaker())) {
+                        eventCallback.recordFailure(error);
+                    }
+                    eventCallback.completeFailure(error);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Batch{" + "keys=" + callbacks.keySet() + '}';
+        }
+    }
+}
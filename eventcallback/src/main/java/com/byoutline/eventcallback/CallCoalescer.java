@@ -0,0 +1,178 @@
+package com.byoutline.eventcallback;
+
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts at most one call for each key at a time. Calls requested under a key
+ * that is already in flight attach to it instead of hitting network again:
+ * <ul>
+ * <li> if they use {@link EventCallbackTemplate} that is already attached,
+ * nothing is done, so onCreate and result events are posted only once </li>
+ * <li> otherwise callback is created from their template and receives result
+ * of call in flight </li>
+ * </ul>
+ * Key should identify request (for example endpoint and its arguments) and
+ * calls with the same key must return the same response type.
+ * <p>
+ * Shared call is allowed by circuit breaker, recorded by it and retried
+ * according to template of callback that started it. Attached callbacks receive failure only after
+ * last attempt.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class CallCoalescer {
+
+    private final Map<Object, InFlightCall<?>> inFlight = new HashMap<Object, InFlightCall<?>>();
+
+    /**
+     * @param key      identity of request.
+     * @param template actions that should be executed for result.
+     * @param invoker  starts network call if no call with same key is in flight.
+     * @return true if new call was started, false if request was attached to
+     * call in flight or circuit breaker of template did not allow it.
+     */
+    @SuppressWarnings("unchecked")
+    public <S> boolean call(@Nonnull Object key, @Nonnull EventCallbackTemplate<S, ?> template,
+                            @Nonnull CallInvoker<S> invoker) {
+        synchronized (inFlight) {
+            InFlightCall<S> existing = (InFlightCall<S>) inFlight.get(key);
+            if (existing != null && existing.isAttached(template)) {
+                return false;
+            }
+        }
+        // callback constructor runs onCreate actions, so subscribers must not be called under lock
+        EventCallback<S, ?> callback = template.newCallback();
+        InFlightCall<S> call;
+        synchronized (inFlight) {
+            InFlightCall<S> existing = (InFlightCall<S>) inFlight.get(key);
+            if (existing != null) {
+                existing.attach(template, callback);
+                return false;
+            }
+            call = new InFlightCall<S>(key, invoker, callback);
+            call.attach(template, callback);
+            inFlight.put(key, call);
+        }
+        return call.start();
+    }
+
+    /**
+     * @return true if call with given key was started and did not complete yet.
+     */
+    public boolean isInFlight(@Nonnull Object key) {
+        synchronized (inFlight) {
+            return inFlight.containsKey(key);
+        }
+    }
+
+    private <S> List<EventCallback<S, ?>> remove(InFlightCall<S> call) {
+        synchronized (inFlight) {
+            if (inFlight.get(call.key) == call) {
+                inFlight.remove(call.key);
+            }
+            return call.callbacks;
+        }
+    }
+
+    /**
+     * Callback passed to Retrofit. Guarded by {@link #inFlight} lock until it
+     * is removed from map, after which attached callbacks no longer change.
+     */
+    private final class InFlightCall<S> implements Callback<S> {
+
+        final Object key;
+        final CallInvoker<S> invoker;
+        /**
+         * Callback that started call. Its template decides about retries.
+         */
+        final EventCallback<S, ?> owner;
+        final List<EventCallbackTemplate<S, ?>> templates = new ArrayList<EventCallbackTemplate<S, ?>>(2);
+        final List<EventCallback<S, ?>> callbacks = new ArrayList<EventCallback<S, ?>>(2);
+
+        InFlightCall(Object key, CallInvoker<S> invoker, EventCallback<S, ?> owner) {
+            this.key = key;
+            this.invoker = invoker;
+            this.owner = owner;
+        }
+
+        /**
+         * @return true if request was sent.
+         */
+        boolean start() {
+            RetrofitError rejection = owner.circuitBreakerRejection();
+            if (rejection != null) {
+                for (EventCallback<S, ?> callback : remove(this)) {
+                    callback.completeFailure(rejection);
+                }
+                return false;
+            }
+            try {
+                invoker.invoke(this);
+            } catch (RuntimeException ex) {
+                remove(this);
+                throw ex;
+            }
+            return true;
+        }
+
+        boolean isAttached(EventCallbackTemplate<S, ?> template) {
+            for (EventCallbackTemplate<S, ?> attached : templates) {
+                if (attached == template) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Template may be attached twice if two requests with it raced, in
+         * which case both callbacks receive result.
+         */
+        void attach(EventCallbackTemplate<S, ?> template, EventCallback<S, ?> callback) {
+            templates.add(template);
+            callbacks.add(callback);
+        }
+
+        @Override
+        public void success(S result, Response response) {
+            for (EventCallback<S, ?> callback : remove(this)) {
+                if (callback == owner) {
+                    callback.success(result, response);
+                } else {
+                    // single call, so only owner records it
+                    callback.replay(result, response);
+                }
+            }
+        }
+
+        @Override
+        public void failure(RetrofitError error) {
+            owner.recordFailure(error);
+            // call stays in flight while waiting for retry, so new requests still attach to it
+            if (owner.retryIfAllowed(error, new Runnable() {
+                @Override
+                public void run() {
+                    start();
+                }
+            })) {
+                return;
+            }
+            for (EventCallback<S, ?> callback : remove(this)) {
+                callback.completeFailure(error);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "InFlightCall{" + "key=" + key + ", templates=" + templates + '}';
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.byoutline.eventcallback;
+
+import retrofit.Callback;
+
+/**
+ * Starts asynchronous Retrofit call, for example
+ * {@code api.getUser(id, callback)}.
+ *
+ * @param <S> Type of response returned by server on success.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface CallInvoker<S> {
+
+    void invoke(Callback<S> callback);
+}
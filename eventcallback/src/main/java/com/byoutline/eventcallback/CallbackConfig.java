@@ -1,11 +1,17 @@
 package com.byoutline.eventcallback;
 
+import com.byoutline.eventcallback.circuitbreaker.CircuitBreakers;
+import com.byoutline.eventcallback.internal.SuccessHandlerResolver;
+import com.byoutline.eventcallback.metrics.CallbackMetrics;
 import com.byoutline.eventcallback.util.StubSessionIdProvider;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.inject.Provider;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * Callback that stores project wide settings. It is suggested to Inject it into
@@ -18,7 +24,12 @@ public class CallbackConfig {
     final boolean debug;
     final IBus bus;
     final Provider<String> sessionIdProvider;
-    final Map<Class, SuccessHandler> sharedSuccessHandlers;
+    final Executor completionExecutor;
+    final CallbackMetrics metrics;
+    final SessionCallbackRegistry sessionRegistry;
+    final CircuitBreakers circuitBreakers;
+    private volatile Map<Class, SuccessHandler> sharedSuccessHandlers;
+    private volatile SuccessHandlerResolver successHandlerResolver;
 
     /**
      * Creates instance of default config for callbacks. Uses session provider
@@ -71,14 +82,114 @@ public class CallbackConfig {
     public CallbackConfig(boolean debug, @Nonnull IBus bus,
                           @Nonnull Provider<String> sessionIdProvider,
                           @Nonnull Map<Class, SuccessHandler> sharedSuccessHandlers) {
+        this(debug, bus, sessionIdProvider, sharedSuccessHandlers, null, null, null, null);
+    }
+
+    private CallbackConfig(boolean debug, @Nonnull IBus bus,
+                           @Nonnull Provider<String> sessionIdProvider,
+                           @Nonnull Map<Class, SuccessHandler> sharedSuccessHandlers,
+                           @Nullable Executor completionExecutor,
+                           @Nullable CallbackMetrics metrics,
+                           @Nullable SessionCallbackRegistry sessionRegistry,
+                           @Nullable CircuitBreakers circuitBreakers) {
         this.debug = debug;
         this.bus = bus;
         this.sessionIdProvider = sessionIdProvider;
         this.sharedSuccessHandlers = sharedSuccessHandlers;
+        this.successHandlerResolver = new SuccessHandlerResolver(sharedSuccessHandlers);
+        this.completionExecutor = completionExecutor;
+        this.metrics = metrics;
+        this.sessionRegistry = sessionRegistry;
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    /**
+     * Returns copy of this config in which callbacks process success and failure
+     * on given executor, instead of on thread that Retrofit used to call them.
+     * Completions of single callback are still processed one at a time, in order.
+     *
+     * @param completionExecutor executor that will process completions, or null
+     *                           to process them on calling thread. See
+     *                           {@link com.byoutline.eventcallback.util.CompletionExecutors}
+     *                           for ready to use executors.
+     * @return new config instance
+     */
+    public CallbackConfig withCompletionExecutor(@Nullable Executor completionExecutor) {
+        return new CallbackConfig(debug, bus, sessionIdProvider, sharedSuccessHandlers, completionExecutor, metrics, sessionRegistry,
+                circuitBreakers);
+    }
+
+    /**
+     * Returns copy of this config in which callbacks report their latency,
+     * outcome and bus posts. Callbacks can be named with
+     * {@link EventCallbackBuilder#endpoint(String)}.
+     *
+     * @param metrics listener that will receive measurements, or null to
+     *                disable measuring.
+     * @return new config instance
+     */
+    public CallbackConfig withMetrics(@Nullable CallbackMetrics metrics) {
+        return new CallbackConfig(debug, bus, sessionIdProvider, sharedSuccessHandlers, completionExecutor, metrics, sessionRegistry,
+                circuitBreakers);
+    }
+
+    /**
+     * Returns copy of this config in which callbacks are tracked by given
+     * registry until they complete, so they can release session only actions
+     * as soon as session changes.
+     *
+     * @param sessionRegistry registry that should track callbacks, or null.
+     * @return new config instance
+     */
+    public CallbackConfig withSessionRegistry(@Nullable SessionCallbackRegistry sessionRegistry) {
+        return new CallbackConfig(debug, bus, sessionIdProvider, sharedSuccessHandlers, completionExecutor, metrics, sessionRegistry,
+                circuitBreakers);
+    }
+
+    /**
+     * Returns copy of this config in which outcomes of callbacks are recorded
+     * by circuit breaker of their endpoint (see
+     * {@link EventCallbackBuilder#endpoint(String)}), and calls started with
+     * {@link EventCallback#call(CallInvoker)} fail immediately while breaker is open.
+     *
+     * @param circuitBreakers breakers of all endpoints, or null.
+     * @return new config instance
+     */
+    public CallbackConfig withCircuitBreakers(@Nullable CircuitBreakers circuitBreakers) {
+        return new CallbackConfig(debug, bus, sessionIdProvider, sharedSuccessHandlers, completionExecutor, metrics, sessionRegistry,
+                circuitBreakers);
+    }
+
+    /**
+     * Adds shared success handler after config creation. Map passed to
+     * constructor is not modified.
+     *
+     * @param resultClass handler will be called for responses of this class and its subclasses.
+     * @param handler     handler to be added.
+     */
+    public synchronized void registerSharedSuccessHandler(@Nonnull Class resultClass, @Nonnull SuccessHandler handler) {
+        Map<Class, SuccessHandler> handlers = new LinkedHashMap<Class, SuccessHandler>(sharedSuccessHandlers);
+        handlers.put(resultClass, handler);
+        sharedSuccessHandlers = handlers;
+        successHandlerResolver = new SuccessHandlerResolver(handlers);
+    }
+
+    /**
+     * Drops handlers resolved for response classes. Call it if map passed to
+     * constructor was modified after config creation.
+     */
+    public synchronized void invalidateSharedSuccessHandlers() {
+        successHandlerResolver = new SuccessHandlerResolver(sharedSuccessHandlers);
+    }
+
+    SuccessHandler[] sharedSuccessHandlersFor(@Nonnull Class resultClass) {
+        return successHandlerResolver.handlersFor(resultClass);
     }
 
     @Override
     public String toString() {
-        return "CallbackConfig{" + "debug=" + debug + ", bus=" + bus + ", sessionIdProvider=" + sessionIdProvider + ", sharedSuccessHandlers=" + sharedSuccessHandlers + '}';
+        return "CallbackConfig{" + "debug=" + debug + ", bus=" + bus + ", sessionIdProvider=" + sessionIdProvider + ", sharedSuccessHandlers=" + sharedSuccessHandlers
+                + ", completionExecutor=" + completionExecutor + ", metrics=" + metrics
+                + ", sessionRegistry=" + sessionRegistry + ", circuitBreakers=" + circuitBreakers + '}';
     }
 }
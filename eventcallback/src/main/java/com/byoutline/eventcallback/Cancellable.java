@@ -0,0 +1,12 @@
+package com.byoutline.eventcallback;
+
+/**
+ * Handle that can cancel started request, for example wrapper around
+ * {@link java.util.concurrent.Future} or HTTP client call.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface Cancellable {
+
+    void cancel();
+}
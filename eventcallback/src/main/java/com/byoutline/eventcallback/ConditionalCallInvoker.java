@@ -0,0 +1,20 @@
+package com.byoutline.eventcallback;
+
+import retrofit.Callback;
+
+import javax.annotation.Nullable;
+
+/**
+ * Starts asynchronous Retrofit call with conditional request headers, for
+ * example {@code api.getUser(id, ifNoneMatch, ifModifiedSince, callback)}
+ * for method with parameters annotated with {@code @Header("If-None-Match")}
+ * and {@code @Header("If-Modified-Since")}. Retrofit skips headers with null
+ * value.
+ *
+ * @param <S> Type of response returned by server on success.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface ConditionalCallInvoker<S> {
+
+    void invoke(@Nullable String ifNoneMatch, @Nullable String ifModifiedSince, Callback<S> callback);
+}
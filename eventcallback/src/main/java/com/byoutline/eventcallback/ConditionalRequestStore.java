@@ -0,0 +1,170 @@
+package com.byoutline.eventcallback;
+
+import com.byoutline.eventcallback.internal.SessionChecker;
+import org.apache.commons.lang3.Validate;
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Provider;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers {@code ETag} and {@code Last-Modified} validators of successful
+ * responses together with their results, so next request with the same key can
+ * be made conditional. When server answers {@code 304 Not Modified} stored
+ * result is passed to success of callback created from template, so onSuccess
+ * actions run as for fresh response. Since 304 response is passed along, actions
+ * registered with {@link EventCallbackBuilder#onStatusCodes(Integer...)} for 304
+ * are executed as well.
+ * <p>
+ * Entries are bound to session in which call was started and are not used
+ * in different session. When store is full least recently used entry is evicted.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class ConditionalRequestStore {
+
+    public static final int NOT_MODIFIED = 304;
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+
+    private final int maxSize;
+    private final LinkedHashMap<Object, Validated> entries;
+
+    /**
+     * @param maxSize maximum number of remembered responses.
+     */
+    public ConditionalRequestStore(final int maxSize) {
+        Validate.isTrue(maxSize > 0, "maxSize must be positive: %d", maxSize);
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<Object, Validated>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Validated> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Starts call with validators stored for given key, if there are any.
+     *
+     * @param key      identity of request (for example endpoint and its arguments).
+     *                 Calls with the same key must return the same response type.
+     * @param template actions that should be executed for fresh or stored result.
+     * @param invoker  starts network call with conditional headers.
+     */
+    public <S> void call(@Nonnull final Object key, @Nonnull EventCallbackTemplate<S, ?> template,
+                         @Nonnull final ConditionalCallInvoker<S> invoker) {
+        final String sessionId = template.config.sessionIdProvider.get();
+        final Validated validated = get(key, template.config.sessionIdProvider);
+        // started through callback, so retried attempts are conditional too
+        newCallback(template, sessionId).call(new CallInvoker<S>() {
+            @Override
+            public void invoke(Callback<S> callback) {
+                Callback<S> conditional = new ConditionalCallback<S>(key, sessionId, validated, callback);
+                if (validated == null) {
+                    invoker.invoke(null, null, conditional);
+                } else {
+                    invoker.invoke(validated.etag, validated.lastModified, conditional);
+                }
+            }
+        });
+    }
+
+    private static <S, E> EventCallback<S, E> newCallback(EventCallbackTemplate<S, E> template, String sessionId) {
+        return new EventCallback<S, E>(template, sessionId);
+    }
+
+    @Nullable
+    private synchronized Validated get(Object key, Provider<String> sessionIdProvider) {
+        Validated entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!new SessionChecker(sessionIdProvider, entry.sessionId).isSameSession()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void put(Object key, Validated entry) {
+        entries.put(key, entry);
+    }
+
+    /**
+     * Forgets validators, so next call with this key is unconditional.
+     */
+    public synchronized void invalidate(@Nonnull Object key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ConditionalRequestStore{" + "maxSize=" + maxSize + ", size=" + entries.size() + '}';
+    }
+
+    private static final class Validated {
+        final Object result;
+        final String etag;
+        final String lastModified;
+        final String sessionId;
+
+        Validated(Object result, String etag, String lastModified, String sessionId) {
+            this.result = result;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.sessionId = sessionId;
+        }
+    }
+
+    private final class ConditionalCallback<S> implements Callback<S> {
+        private final Object key;
+        private final String sessionId;
+        private final Validated sent;
+        private final Callback<S> delegate;
+
+        ConditionalCallback(Object key, String sessionId, @Nullable Validated sent, Callback<S> delegate) {
+            this.key = key;
+            this.sessionId = sessionId;
+            this.sent = sent;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void success(S result, Response response) {
+            if (result != null && response != null) {
+                ResponseHeaders headers = new ResponseHeaders(response.getHeaders());
+                String etag = headers.get(ETAG);
+                String lastModified = headers.get(LAST_MODIFIED);
+                if (etag != null || lastModified != null) {
+                    put(key, new Validated(result, etag, lastModified, sessionId));
+                }
+            }
+            delegate.success(result, response);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void failure(RetrofitError error) {
+            Response response = error.getResponse();
+            if (sent != null && response != null && response.getStatus() == NOT_MODIFIED) {
+                delegate.success((S) sent.result, response);
+                return;
+            }
+            delegate.failure(error);
+        }
+    }
+}
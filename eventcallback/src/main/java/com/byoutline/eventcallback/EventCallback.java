@@ -1,20 +1,23 @@
 package com.byoutline.eventcallback;
 
-import com.byoutline.eventcallback.internal.EventPoster;
+import com.byoutline.eventcallback.circuitbreaker.CircuitBreaker;
 import com.byoutline.eventcallback.internal.RetrofitErrorConverter;
+import com.byoutline.eventcallback.internal.SerialExecutor;
 import com.byoutline.eventcallback.internal.SessionChecker;
-import com.byoutline.eventcallback.internal.actions.CreateEvents;
-import com.byoutline.eventcallback.internal.actions.ResultEvents;
-import com.byoutline.eventcallback.internal.actions.ScheduledActions;
+import com.byoutline.eventcallback.internal.actions.DispatchPlan;
+import com.byoutline.eventcallback.metrics.CallbackMetrics;
+import com.byoutline.eventcallback.metrics.CallbackOutcome;
 import com.google.gson.reflect.TypeToken;
-import org.apache.commons.lang3.Validate;
 import retrofit.Callback;
 import retrofit.RetrofitError;
+import retrofit.client.Header;
 import retrofit.client.Response;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.Map;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -39,6 +42,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * </ul>
  * Create instance by calling
  * {@link #builder(com.byoutline.eventcallback.CallbackConfig, com.google.gson.reflect.TypeToken)}.
+ * If same configuration is used for many calls build {@link EventCallbackTemplate}
+ * once and create callbacks from it.
  *
  * @param <S> Type of response returned by server on success.
  * @param <E> Type of response returned by server on error.
@@ -46,54 +51,61 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class EventCallback<S, E> implements Callback<S> {
 
-    private final CallbackConfig config;
-    private final TypeToken<E> validationErrorTypeToken;
-    private final SessionChecker sessionChecker;
-
-    private final ScheduledActions<CreateEvents> onCreateActions;
-    private final ScheduledActions<ResultEvents<S>> onSuccessActions;
-    private final ScheduledActions<ResultEvents<E>> onErrorActions;
-    private final Map<Integer, ScheduledActions<CreateEvents>> onStatusCodeActions;
+    private static final int CIRCUIT_OPEN_STATUS = 503;
 
-    private final EventPoster postHelper;
+    /**
+     * Replaced by template without session only actions when session registry
+     * reports session change.
+     */
+    private volatile EventCallbackTemplate<S, E> template;
+    private final SessionChecker sessionChecker;
+    /**
+     * Null if completions should be processed on calling thread.
+     */
+    private final Executor completionExecutor;
+    /**
+     * {@link System#nanoTime()} of creation, or 0 if metrics are disabled.
+     */
+    private final long createdNanos;
+    /**
+     * Number of calls made with this callback. Calls are sequential, so
+     * volatile is enough.
+     */
+    private volatile int attempts = 1;
+    /**
+     * Invoker passed to {@link #call(CallInvoker)}, used to repeat call. Null
+     * if callback was passed to Retrofit directly.
+     */
+    private volatile CallInvoker<S> invoker;
 
     /**
      * Creates instance. For convenience use
-     * {@link #builder(CallbackConfig, TypeToken)}
+     * {@link #builder(CallbackConfig, TypeToken)} or
+     * {@link EventCallbackTemplate#newCallback()}
      * instead of calling directly.
      */
-    EventCallback(@Nonnull CallbackConfig config, @Nullable TypeToken<E> validationErrorTypeToken,
-                  @Nullable String currentSessionId,
-                  @Nonnull ScheduledActions<CreateEvents> onCreateActions, @Nonnull ScheduledActions<ResultEvents<S>> onSuccessActions,
-                  @Nonnull ScheduledActions<ResultEvents<E>> onErrorActions, @Nonnull Map<Integer, ScheduledActions<CreateEvents>> onStatusCodeActions) {
-        this.config = config;
-
-        this.validationErrorTypeToken = validationErrorTypeToken;
-        this.sessionChecker = new SessionChecker(config.sessionIdProvider, currentSessionId);
-        this.onCreateActions = onCreateActions;
-        this.onSuccessActions = onSuccessActions;
-        this.onErrorActions = onErrorActions;
-        this.onStatusCodeActions = onStatusCodeActions;
-
-        if (config.debug) {
-            validateArgs();
+    EventCallback(@Nonnull EventCallbackTemplate<S, E> template, @Nullable String currentSessionId) {
+        this.template = template;
+        this.sessionChecker = new SessionChecker(template.config.sessionIdProvider, currentSessionId);
+        Executor executor = template.config.completionExecutor;
+        this.completionExecutor = executor == null ? null : new SerialExecutor(executor);
+        this.createdNanos = template.config.metrics == null ? 0 : System.nanoTime();
+        if (template.config.sessionRegistry != null) {
+            template.config.sessionRegistry.register(this);
         }
 
-        postHelper = new EventPoster(config.bus);
-        postHelper.executeCommonActions(onCreateActions, sessionChecker.isSameSession());
+        template.postHelper.executeCommonActions(template.onCreateActions, sessionChecker.isSameSession());
+        postLastKnownResult();
     }
 
-    private void validateArgs() {
-        Validate.notNull(validationErrorTypeToken);
-        Validate.notNull(onCreateActions);
-        Validate.notNull(onSuccessActions);
-        Validate.notNull(onErrorActions);
-        Validate.notNull(onStatusCodeActions);
-        onCreateActions.validate();
-        onSuccessActions.validate();
-        onErrorActions.validate();
-        for (ScheduledActions<CreateEvents> action : onStatusCodeActions.values()) {
-            action.validate();
+    private void postLastKnownResult() {
+        if (template.lastKnownResults == null) {
+            return;
+        }
+        LastKnownResults.Snapshot<S> snapshot = template.lastKnownResults.get(template.lastKnownResultKey,
+                sessionChecker.callbackStartSessionId);
+        if (snapshot != null) {
+            template.postHelper.executeResponseEvents(template.onSuccessActions, snapshot.result, snapshot.response, true);
         }
     }
 
@@ -130,20 +142,232 @@ public class EventCallback<S, E> implements Callback<S> {
         return new EventCallbackBuilder<S, E>(config, errorTypeToken);
     }
 
+    /**
+     * Starts call with this callback, unless circuit breaker of its endpoint
+     * is open. In that case onError and status code actions are executed
+     * immediately with synthetic 503 error, without network call.
+     * <p>
+     * Invoker is remembered, so failed call can be repeated by retry policy.
+     *
+     * @param invoker starts Retrofit call with passed callback.
+     * @return true if call was started.
+     */
+    public boolean call(@Nonnull CallInvoker<S> invoker) {
+        this.invoker = invoker;
+        RetrofitError rejection = circuitBreakerRejection();
+        if (rejection != null) {
+            completeFailure(rejection);
+            return false;
+        }
+        invoker.invoke(this);
+        return true;
+    }
+
+    /**
+     * @return synthetic 503 error if circuit breaker of endpoint is open, or
+     * null if request may be sent.
+     */
+    @Nullable
+    RetrofitError circuitBreakerRejection() {
+        EventCallbackTemplate<S, E> currentTemplate = template;
+        CircuitBreaker circuitBreaker = currentTemplate.circuitBreaker;
+        if (circuitBreaker == null || circuitBreaker.allowRequest()) {
+            return null;
+        }
+        return circuitOpenError(currentTemplate.endpoint);
+    }
+
+    private static RetrofitError circuitOpenError(String endpoint) {
+        String url = "circuit-breaker:" + endpoint;
+        Response response = new Response(url, CIRCUIT_OPEN_STATUS, "Circuit breaker open", Collections.<Header>emptyList(), null);
+        return RetrofitError.httpError(url, response, null, null);
+    }
+
     @Override
     public void success(S result, Response response) {
-        boolean postNullResponse = true;
-        informSharedSuccessHandlers(result);
-        informStatusCodeListener(response);
-        postHelper.executeResponseActions(onSuccessActions, result, response, sessionChecker.isSameSession(), postNullResponse);
+        CircuitBreaker circuitBreaker = template.circuitBreaker;
+        if (circuitBreaker != null) {
+            circuitBreaker.onSuccess();
+        }
+        replay(result, response);
+    }
+
+    /**
+     * Executes success actions with result that did not come from server
+     * (for example one read from cache). Unlike {@link #success(Object, Response)}
+     * it is not recorded by circuit breaker, so it cannot close breaker of
+     * endpoint that is still failing.
+     */
+    public void replay(final S result, final Response response) {
+        unregisterFromSession();
+        if (completionExecutor == null) {
+            processSuccess(result, response);
+            return;
+        }
+        completionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                processSuccess(result, response);
+            }
+        });
     }
 
     @Override
     public void failure(RetrofitError error) {
+        recordFailure(error);
+        final CallInvoker<S> currentInvoker = invoker;
+        if (currentInvoker != null && retryIfAllowed(error, new Runnable() {
+            @Override
+            public void run() {
+                call(currentInvoker);
+            }
+        })) {
+            return;
+        }
+        completeFailure(error);
+    }
+
+    void recordFailure(RetrofitError error) {
+        CircuitBreaker circuitBreaker = template.circuitBreaker;
+        if (circuitBreaker == null) {
+            return;
+        }
+        Response response = error.getResponse();
+        if (error.isNetworkError() || (response != null && response.getStatus() >= 500)) {
+            circuitBreaker.onFailure();
+        } else if (response != null) {
+            // server is responding, client errors do not indicate outage
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    /**
+     * Executes error actions without recording failure or retrying call.
+     */
+    void completeFailure(final RetrofitError error) {
+        unregisterFromSession();
+        if (completionExecutor == null) {
+            processFailure(error);
+            return;
+        }
+        completionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                processFailure(error);
+            }
+        });
+    }
+
+    /**
+     * Schedules retry if retry policy allows it. Used also by
+     * {@link CallCoalescer}, which repeats call shared by many callbacks.
+     *
+     * @param retry repeats the call.
+     * @return true if call was scheduled to be repeated.
+     */
+    boolean retryIfAllowed(RetrofitError error, Runnable retry) {
+        RetryPolicy retryPolicy = template.retryPolicy;
+        int attemptsMade = attempts;
+        if (retryPolicy == null || !retryPolicy.shouldRetry(error, attemptsMade)) {
+            return false;
+        }
+        attempts = attemptsMade + 1;
+        retryPolicy.scheduler.schedule(retry, retryPolicy.delayNanos(attemptsMade), TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    private void unregisterFromSession() {
+        SessionCallbackRegistry registry = template.config.sessionRegistry;
+        if (registry != null) {
+            registry.unregister(this);
+        }
+    }
+
+    /**
+     * Called by {@link SessionCallbackRegistry} when session ends before this
+     * callback completed.
+     */
+    void dropSessionOnlyActions() {
+        template = template.crossSessionOnly();
+    }
+
+    @Nullable
+    CircuitBreaker circuitBreaker() {
+        return template.circuitBreaker;
+    }
+
+    boolean isSameSession() {
+        return sessionChecker.isSameSession();
+    }
+
+    private void processSuccess(S result, Response response) {
+        long completedNanos = completionTime();
+        boolean postNullResponse = true;
+        informSharedSuccessHandlers(result);
+        // session is checked once, so all action groups see the same state
+        boolean sameSession = sessionChecker.isSameSession();
+        informStatusCodeListener(response, sameSession);
+        if (isChangedResult(result, response)) {
+            template.postHelper.executeResponseActions(template.onSuccessActions, result, response, sameSession, postNullResponse);
+        } else {
+            template.postHelper.executeCommonActions(template.onSuccessActions, sameSession);
+        }
+        reportCompletion(completedNanos, sameSession ? CallbackOutcome.SUCCESS : CallbackOutcome.SESSION_EXPIRED, response);
+    }
+
+    private void processFailure(RetrofitError error) {
+        long completedNanos = completionTime();
         boolean postNullResponse = false;
-        E convertedError = RetrofitErrorConverter.<E>getAsClassOrNull(validationErrorTypeToken, error);
-        informStatusCodeListener(error.getResponse());
-        postHelper.executeResponseActions(onErrorActions, convertedError, error.getResponse(), sessionChecker.isSameSession(), postNullResponse);
+        Response response = error.getResponse();
+        boolean sameSession = sessionChecker.isSameSession();
+        informStatusCodeListener(response, sameSession);
+        E convertedError = convertErrorIfNeeded(error, sameSession);
+        template.postHelper.executeResponseActions(template.onErrorActions, convertedError, response, sameSession, postNullResponse);
+        reportCompletion(completedNanos, sameSession ? failureOutcome(error) : CallbackOutcome.SESSION_EXPIRED, response);
+    }
+
+    /**
+     * Stores result if stale-while-revalidate mode is enabled.
+     *
+     * @return false if result is same as one already posted to response events.
+     */
+    private boolean isChangedResult(S result, Response response) {
+        if (template.lastKnownResults == null) {
+            return true;
+        }
+        return template.lastKnownResults.update(template.lastKnownResultKey, result, response,
+                sessionChecker.callbackStartSessionId);
+    }
+
+    private long completionTime() {
+        return template.config.metrics == null ? 0 : System.nanoTime();
+    }
+
+    private static CallbackOutcome failureOutcome(RetrofitError error) {
+        if (error.isNetworkError()) {
+            return CallbackOutcome.NETWORK_ERROR;
+        }
+        return error.getResponse() != null ? CallbackOutcome.HTTP_ERROR : CallbackOutcome.UNEXPECTED_ERROR;
+    }
+
+    private void reportCompletion(long completedNanos, CallbackOutcome outcome, @Nullable Response response) {
+        CallbackMetrics metrics = template.config.metrics;
+        if (metrics == null) {
+            return;
+        }
+        int statusCode = response == null ? 0 : response.getStatus();
+        metrics.onCallCompleted(template.endpoint, outcome, statusCode, completedNanos - createdNanos);
+    }
+
+    /**
+     * Parses error body only if it will be passed to at least one {@link ResponseEvent}.
+     */
+    @Nullable
+    private E convertErrorIfNeeded(RetrofitError error, boolean sameSession) {
+        if (!template.onErrorActions.hasResponseEvents(sameSession)) {
+            return null;
+        }
+        return RetrofitErrorConverter.getAsClassOrNull(template.validationErrorTypeToken, error);
     }
 
     /**
@@ -156,10 +380,8 @@ public class EventCallback<S, E> implements Callback<S> {
             // no handler matches undefined result class
             return;
         }
-        for (Map.Entry<Class, SuccessHandler> handler : config.sharedSuccessHandlers.entrySet()) {
-            if (handler.getKey().isAssignableFrom(result.getClass())) {
-                handler.getValue().onCallSuccess(result);
-            }
+        for (SuccessHandler handler : template.config.sharedSuccessHandlersFor(result.getClass())) {
+            handler.onCallSuccess(result);
         }
     }
 
@@ -167,26 +389,28 @@ public class EventCallback<S, E> implements Callback<S> {
      * Checks if any actions is associated with response status code, and
      * execute it.
      *
-     * @param response response from the server that can be checked for status
-     *                 code.
+     * @param response    response from the server that can be checked for status
+     *                    code.
+     * @param sameSession result of session check for current completion.
      */
-    private void informStatusCodeListener(@Nullable Response response) {
+    private void informStatusCodeListener(@Nullable Response response, boolean sameSession) {
         if (response == null) {
             return;
         }
-        ScheduledActions<CreateEvents> actions = onStatusCodeActions.get(response.getStatus());
+        int status = response.getStatus();
+        DispatchPlan<Object> actions = template.onStatusCodeActions.forStatusCode(status);
         if (actions != null) {
-            postHelper.executeCommonActions(actions, sessionChecker.isSameSession());
+            template.postHelper.executeCommonActions(actions, sameSession);
+        }
+        DispatchPlan<Object> classActions = template.onStatusCodeActions.forStatusClass(status);
+        if (classActions != null) {
+            template.postHelper.executeCommonActions(classActions, sameSession);
         }
     }
 
     @Override
     public String toString() {
-        return "EventCallback{" + "config=" + config + ",\n"
-                + "validationErrorTypeToken=" + validationErrorTypeToken + ",\n"
-                + "callbackStartSessionId=" + sessionChecker.callbackStartSessionId + ",\n"
-                + "onCreateActions=" + onCreateActions + ",\n"
-                + "onSuccessActions=" + onSuccessActions + ",\n"
-                + "onErrorActions=" + onErrorActions + '}';
+        return "EventCallback{" + "callbackStartSessionId=" + sessionChecker.callbackStartSessionId + ",\n"
+                + "template=" + template + '}';
     }
 }
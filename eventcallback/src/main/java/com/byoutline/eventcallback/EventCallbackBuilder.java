@@ -2,9 +2,14 @@ package com.byoutline.eventcallback;
 
 import com.byoutline.eventcallback.internal.actions.AtomicBooleanSetter;
 import com.byoutline.eventcallback.internal.actions.CreateEvents;
+import com.byoutline.eventcallback.internal.actions.DispatchPlan;
+import com.byoutline.eventcallback.internal.actions.FlagGroupSetter;
 import com.byoutline.eventcallback.internal.actions.ResultEvents;
 import com.byoutline.eventcallback.internal.actions.ScheduledActions;
+import com.byoutline.eventcallback.internal.actions.StatusCodeActions;
+import com.byoutline.eventcallback.metrics.CallbackMetrics;
 import com.google.gson.reflect.TypeToken;
+import org.apache.commons.lang3.Validate;
 
 import javax.annotation.Nonnull;
 import java.util.*;
@@ -22,11 +27,16 @@ public class EventCallbackBuilder<S, E> {
     private final CallbackConfig config;
     private final TypeToken<E> validationErrorTypeToken;
     private final String callbackStartSessionId;
+    private String endpoint = CallbackMetrics.UNNAMED_ENDPOINT;
+    private LastKnownResults<S> lastKnownResults;
+    private Object lastKnownResultKey;
+    private RetryPolicy retryPolicy;
 
     private final ScheduledActions<CreateEvents> onCreateActions = getCreateSheduledActionInstance();
     private final ScheduledActions<ResultEvents<S>> onSuccessActions = new ScheduledActions<ResultEvents<S>>(new ResultEvents<S>(), new ResultEvents<S>(), new ArrayList<AtomicBooleanSetter>());
     private final ScheduledActions<ResultEvents<E>> onErrorActions = new ScheduledActions<ResultEvents<E>>(new ResultEvents<E>(), new ResultEvents<E>(), new ArrayList<AtomicBooleanSetter>());
     private final Map<Integer, ScheduledActions<CreateEvents>> onStatusCodeActions = new HashMap<Integer, ScheduledActions<CreateEvents>>();
+    private final Map<Integer, ScheduledActions<CreateEvents>> onStatusClassActions = new HashMap<Integer, ScheduledActions<CreateEvents>>();
 
     public EventCallbackBuilder(@Nonnull CallbackConfig config,
                                 @Nonnull TypeToken<E> validationErrorTypeToken) {
@@ -39,6 +49,47 @@ public class EventCallbackBuilder<S, E> {
         return new ScheduledActions<CreateEvents>(new CreateEvents(), new CreateEvents(), new ArrayList<AtomicBooleanSetter>());
     }
 
+    /**
+     * Names callbacks for {@link CallbackMetrics}, so measurements of different
+     * endpoints can be told apart.
+     */
+    public EventCallbackBuilder<S, E> endpoint(@Nonnull String endpoint) {
+        this.endpoint = Validate.notNull(endpoint);
+        return this;
+    }
+
+    /**
+     * Enables stale-while-revalidate mode. Callback posts result last stored
+     * for given key to onSuccess response events as soon as it is created.
+     * When fresh result arrives it is stored and onSuccess actions are executed,
+     * but response events are posted only if result differs from stored one.
+     *
+     * @param lastKnownResults store shared by callbacks of this endpoint.
+     * @param key              identity of request (for example endpoint arguments).
+     */
+    public EventCallbackBuilder<S, E> staleWhileRevalidate(@Nonnull LastKnownResults<S> lastKnownResults,
+                                                           @Nonnull Object key) {
+        this.lastKnownResults = Validate.notNull(lastKnownResults);
+        this.lastKnownResultKey = Validate.notNull(key);
+        return this;
+    }
+
+    /**
+     * Repeats failed call as long as policy allows it. onError and status code
+     * actions are executed only for last attempt.
+     * <p>
+     * Only calls started with {@link EventCallback#call(CallInvoker)}, or by
+     * {@link ResponseCache}, {@link CallCoalescer}, {@link ConditionalRequestStore}
+     * and {@link com.byoutline.eventcallback.disk.DiskResponseStore}, can be
+     * repeated, since their invoker is remembered by callback.
+     *
+     * @param retryPolicy decides which errors are retried and when.
+     */
+    public EventCallbackBuilder<S, E> retry(@Nonnull RetryPolicy retryPolicy) {
+        this.retryPolicy = Validate.notNull(retryPolicy);
+        return this;
+    }
+
     public ActionsSetter<S, E> onCreate() {
         return new ActionsSetter<S, E>(this, onCreateActions);
     }
@@ -52,14 +103,34 @@ public class EventCallbackBuilder<S, E> {
     }
 
     public ActionsSetter<S, E> onStatusCodes(Integer... statusCodes) {
-        List<ScheduledActions<? extends CreateEvents>> actions = new ArrayList<ScheduledActions<? extends CreateEvents>>(statusCodes.length);
-        for (Integer statusCode : statusCodes) {
-            if (!onStatusCodeActions.containsKey(statusCode)) {
-                onStatusCodeActions.put(statusCode, getCreateSheduledActionInstance());
+        return new ActionsSetter<S, E>(this, getActions(onStatusCodeActions, statusCodes));
+    }
+
+    /**
+     * Executes actions for every status code in given classes. Actions for
+     * status class are executed after actions for exact status code.
+     *
+     * @param statusClasses first digit of status codes, for example 5 for any 5xx.
+     */
+    public ActionsSetter<S, E> onStatusCodeClasses(Integer... statusClasses) {
+        for (Integer statusClass : statusClasses) {
+            Validate.isTrue(statusClass >= StatusCodeActions.MIN_STATUS_CLASS
+                    && statusClass <= StatusCodeActions.MAX_STATUS_CLASS, "Invalid status class: %d", statusClass);
+        }
+        return new ActionsSetter<S, E>(this, getActions(onStatusClassActions, statusClasses));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ScheduledActions<? extends CreateEvents>[] getActions(Map<Integer, ScheduledActions<CreateEvents>> actionsMap,
+                                                                         Integer[] keys) {
+        ScheduledActions<? extends CreateEvents>[] actions = new ScheduledActions[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            if (!actionsMap.containsKey(keys[i])) {
+                actionsMap.put(keys[i], getCreateSheduledActionInstance());
             }
-            actions.add(onStatusCodeActions.get(statusCode));
+            actions[i] = actionsMap.get(keys[i]);
         }
-        return new ActionsSetter<S, E>(this, actions.toArray(new ScheduledActions[statusCodes.length]));
+        return actions;
     }
 
     public static class ActionsSetter<S, E> {
@@ -73,11 +144,20 @@ public class EventCallbackBuilder<S, E> {
         }
 
         public ExpireSetter<Object, S, E> postEvents(Object... events) {
-            return new ExpireSetter<Object, S, E>(Arrays.asList(events), builder, actions);
+            return new ExpireSetter<Object, S, E>(events, builder, actions);
         }
 
         public BoolSetter<S, E> setAtomicBooleans(AtomicBoolean... booleans) {
-            return new BoolSetter<S, E>(Arrays.asList(booleans), builder, actions);
+            return new BoolSetter<S, E>(booleans, null, 0, builder, actions);
+        }
+
+        /**
+         * Sets or clears flags from mask with single update of {@link FlagGroup},
+         * regardless of number of flags in mask.
+         */
+        public BoolSetter<S, E> setFlags(@Nonnull FlagGroup group, int mask) {
+            Validate.notNull(group, "Flag group cannot be null");
+            return new BoolSetter<S, E>(new AtomicBoolean[0], group, mask, builder, actions);
         }
     }
 
@@ -96,63 +176,149 @@ public class EventCallbackBuilder<S, E> {
          * @return next stage of the builder
          */
         public ResultExpireSetter<R, S, E> postResponseEvents(ResponseEvent<R>... events) {
-            return new ResultExpireSetter(Arrays.asList(events), builder, actions);
+            return new ResultExpireSetter<R, S, E>(events, builder, actions);
+        }
+
+        /**
+         * Posts new event instance on each completion, instead of reusing one
+         * instance, so concurrent callbacks and asynchronous buses never
+         * observe response of other call. Those events are posted after
+         * events passed to {@link #postResponseEvents(ResponseEvent[])}.
+         *
+         * @param factories creates events to be posted with response body set.
+         *                  Pass {@link ResponseEventPool} to reuse instances.
+         * @return next stage of the builder
+         */
+        public ResultFactoryExpireSetter<R, S, E> postNewResponseEvents(ResponseEventFactory<R>... factories) {
+            return new ResultFactoryExpireSetter<R, S, E>(factories, builder, actions);
         }
     }
 
     public static class ExpireSetter<R, S, E> {
 
         private final ScheduledActions<? extends CreateEvents>[] actions;
-        private final List<R> argEvents;
+        private final R[] argEvents;
         private final EventCallbackBuilder<S, E> builder;
+        private Priority priority = Priority.NORMAL;
 
-        private ExpireSetter(List<R> argEvents, EventCallbackBuilder<S, E> builder, ScheduledActions<? extends CreateEvents>... actions) {
+        private ExpireSetter(R[] argEvents, EventCallbackBuilder<S, E> builder, ScheduledActions<? extends CreateEvents>... actions) {
             this.actions = actions;
             this.argEvents = argEvents;
             this.builder = builder;
         }
 
+        /**
+         * @param priority priority of events, {@link Priority#NORMAL} by default.
+         * @return this setter
+         */
+        public ExpireSetter<R, S, E> withPriority(@Nonnull Priority priority) {
+            this.priority = Validate.notNull(priority);
+            return this;
+        }
+
         public EventCallbackBuilder<S, E> validThisSessionOnly() {
             for (ScheduledActions<? extends CreateEvents> action : actions) {
-                addEvents(action.sessionOnlyEvents.events);
+                addEvents(action.sessionOnlyEvents);
             }
             return builder;
         }
 
         public EventCallbackBuilder<S, E> validBetweenSessions() {
             for (ScheduledActions<? extends CreateEvents> action : actions) {
-                addEvents(action.multiSessionEvents.events);
+                addEvents(action.multiSessionEvents);
             }
             return builder;
         }
 
-        private void addEvents(List<R> events) {
-            events.addAll(argEvents);
+        private void addEvents(CreateEvents events) {
+            Collections.addAll(events.events, argEvents);
+            addPriorities(events.eventPriorities, argEvents.length, priority);
+        }
+    }
+
+    /**
+     * Priority is stored for every registration, so the same event can be
+     * registered with different priorities.
+     */
+    private static void addPriorities(List<Priority> priorities, int count, Priority priority) {
+        for (int i = 0; i < count; i++) {
+            priorities.add(priority);
         }
     }
 
     public static class ResultExpireSetter<R, S, E> {
 
         private final ScheduledActions<ResultEvents<R>> actions;
-        private final List<ResponseEvent<R>> argEvents;
+        private final ResponseEvent<R>[] argEvents;
         private final EventCallbackBuilder<S, E> builder;
+        private Priority priority = Priority.NORMAL;
 
-        private ResultExpireSetter(List<ResponseEvent<R>> argEvents, EventCallbackBuilder<S, E> builder, ScheduledActions<ResultEvents<R>> actions) {
+        private ResultExpireSetter(ResponseEvent<R>[] argEvents, EventCallbackBuilder<S, E> builder, ScheduledActions<ResultEvents<R>> actions) {
             this.actions = actions;
             this.argEvents = argEvents;
             this.builder = builder;
         }
 
+        /**
+         * @param priority priority of events, {@link Priority#NORMAL} by default.
+         * @return this setter
+         */
+        public ResultExpireSetter<R, S, E> withPriority(@Nonnull Priority priority) {
+            this.priority = Validate.notNull(priority);
+            return this;
+        }
+
+        public EventCallbackBuilder<S, E> validThisSessionOnly() {
+            return addEvents(actions.sessionOnlyEvents);
+        }
+
+        public EventCallbackBuilder<S, E> validBetweenSessions() {
+            return addEvents(actions.multiSessionEvents);
+        }
+
+        private EventCallbackBuilder<S, E> addEvents(ResultEvents<R> events) {
+            Collections.addAll(events.resultEvents, argEvents);
+            addPriorities(events.resultEventPriorities, argEvents.length, priority);
+            return builder;
+        }
+    }
+
+    public static class ResultFactoryExpireSetter<R, S, E> {
+
+        private final ScheduledActions<ResultEvents<R>> actions;
+        private final ResponseEventFactory<R>[] argFactories;
+        private final EventCallbackBuilder<S, E> builder;
+        private Priority priority = Priority.NORMAL;
+
+        private ResultFactoryExpireSetter(ResponseEventFactory<R>[] argFactories, EventCallbackBuilder<S, E> builder, ScheduledActions<ResultEvents<R>> actions) {
+            this.actions = actions;
+            this.argFactories = argFactories;
+            this.builder = builder;
+        }
+
+        /**
+         * @param priority priority of created events, {@link Priority#NORMAL} by default.
+         *                 Events pooled with {@link ResponseEventPool} must not
+         *                 be delayed by bus, so do not combine them with
+         *                 {@link Priority#LOW} if bus defers low priority events.
+         * @return this setter
+         */
+        public ResultFactoryExpireSetter<R, S, E> withPriority(@Nonnull Priority priority) {
+            this.priority = Validate.notNull(priority);
+            return this;
+        }
+
         public EventCallbackBuilder<S, E> validThisSessionOnly() {
-            return addEvents(actions.sessionOnlyEvents.resultEvents);
+            return addFactories(actions.sessionOnlyEvents);
         }
 
         public EventCallbackBuilder<S, E> validBetweenSessions() {
-            return addEvents(actions.multiSessionEvents.resultEvents);
+            return addFactories(actions.multiSessionEvents);
         }
 
-        private EventCallbackBuilder<S, E> addEvents(List<ResponseEvent<R>> events) {
-            events.addAll(argEvents);
+        private EventCallbackBuilder<S, E> addFactories(ResultEvents<R> events) {
+            Collections.addAll(events.resultEventFactories, argFactories);
+            addPriorities(events.resultEventFactoryPriorities, argFactories.length, priority);
             return builder;
         }
     }
@@ -160,12 +326,17 @@ public class EventCallbackBuilder<S, E> {
     public static class BoolSetter<S, E> {
 
         private final ScheduledActions<? extends CreateEvents>[] actions;
-        private final List<AtomicBoolean> booleans;
+        private final AtomicBoolean[] booleans;
+        private final FlagGroup flagGroup;
+        private final int flagMask;
         private final EventCallbackBuilder<S, E> builder;
 
-        private BoolSetter(List<AtomicBoolean> booleans, EventCallbackBuilder<S, E> builder, ScheduledActions<? extends CreateEvents>... actions) {
+        private BoolSetter(AtomicBoolean[] booleans, FlagGroup flagGroup, int flagMask,
+                           EventCallbackBuilder<S, E> builder, ScheduledActions<? extends CreateEvents>... actions) {
             this.actions = actions;
             this.booleans = booleans;
+            this.flagGroup = flagGroup;
+            this.flagMask = flagMask;
             this.builder = builder;
         }
 
@@ -174,6 +345,9 @@ public class EventCallbackBuilder<S, E> {
                 for (AtomicBoolean bool : booleans) {
                     action.boolsToSet.add(new AtomicBooleanSetter(bool, value));
                 }
+                if (flagGroup != null) {
+                    action.flagsToSet.add(FlagGroupSetter.ofValue(flagGroup, flagMask, value));
+                }
             }
         }
 
@@ -191,10 +365,20 @@ public class EventCallbackBuilder<S, E> {
         }
     }
 
+    /**
+     * Compiles configured actions into immutable template, that can create
+     * many callbacks without repeating builder work.
+     */
+    public EventCallbackTemplate<S, E> buildTemplate() {
+        return new EventCallbackTemplate<S, E>(config, endpoint, validationErrorTypeToken,
+                DispatchPlan.<Object>ofCreateActions(onCreateActions),
+                DispatchPlan.ofResultActions(onSuccessActions),
+                DispatchPlan.ofResultActions(onErrorActions),
+                StatusCodeActions.compile(onStatusCodeActions, onStatusClassActions),
+                lastKnownResults, lastKnownResultKey, retryPolicy);
+    }
+
     public EventCallback<S, E> build() {
-        return new EventCallback(config, validationErrorTypeToken,
-                callbackStartSessionId,
-                onCreateActions, onSuccessActions,
-                onErrorActions, onStatusCodeActions);
+        return new EventCallback<S, E>(buildTemplate(), callbackStartSessionId);
     }
 }
@@ -0,0 +1,146 @@
+package com.byoutline.eventcallback;
+
+import com.byoutline.eventcallback.circuitbreaker.CircuitBreaker;
+import com.byoutline.eventcallback.internal.EventPoster;
+import com.byoutline.eventcallback.internal.actions.DispatchPlan;
+import com.byoutline.eventcallback.internal.actions.StatusCodeActions;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable actions configuration of {@link EventCallback}. Create it once per
+ * endpoint with {@link EventCallbackBuilder#buildTemplate()} and call
+ * {@link #newCallback()} for every request, so builder cost is paid only once.
+ * <p>
+ * Template shares registered events between all callbacks created from it, so
+ * {@link ResponseEvent}s that may be read after another callback from same
+ * template completed should be registered with
+ * {@link EventCallbackBuilder.ResultEventsSetter#postNewResponseEvents(ResponseEventFactory[])}.
+ *
+ * @param <S> Type of response returned by server on success.
+ * @param <E> Type of response returned by server on error.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class EventCallbackTemplate<S, E> {
+
+    final CallbackConfig config;
+    final String endpoint;
+    final TypeToken<E> validationErrorTypeToken;
+
+    final DispatchPlan<Object> onCreateActions;
+    final DispatchPlan<S> onSuccessActions;
+    final DispatchPlan<E> onErrorActions;
+    final StatusCodeActions onStatusCodeActions;
+    /**
+     * Null unless stale-while-revalidate mode is enabled.
+     */
+    final LastKnownResults<S> lastKnownResults;
+    final Object lastKnownResultKey;
+    /**
+     * Null unless failed calls should be retried.
+     */
+    final RetryPolicy retryPolicy;
+
+    final EventPoster postHelper;
+    /**
+     * Null if circuit breakers are not configured.
+     */
+    final CircuitBreaker circuitBreaker;
+    private volatile EventCallbackTemplate<S, E> crossSessionOnly;
+
+    EventCallbackTemplate(@Nonnull CallbackConfig config, @Nonnull String endpoint,
+                          @Nonnull TypeToken<E> validationErrorTypeToken,
+                          @Nonnull DispatchPlan<Object> onCreateActions, @Nonnull DispatchPlan<S> onSuccessActions,
+                          @Nonnull DispatchPlan<E> onErrorActions,
+                          @Nonnull StatusCodeActions onStatusCodeActions,
+                          @Nullable LastKnownResults<S> lastKnownResults, @Nullable Object lastKnownResultKey,
+                          @Nullable RetryPolicy retryPolicy) {
+        this.config = config;
+        this.endpoint = endpoint;
+        this.validationErrorTypeToken = validationErrorTypeToken;
+        this.onCreateActions = onCreateActions;
+        this.onSuccessActions = onSuccessActions;
+        this.onErrorActions = onErrorActions;
+        this.onStatusCodeActions = onStatusCodeActions;
+        this.lastKnownResults = lastKnownResults;
+        this.lastKnownResultKey = lastKnownResultKey;
+        this.retryPolicy = retryPolicy;
+
+        if (config.debug) {
+            validateArgs();
+        }
+        this.postHelper = new EventPoster(config.bus, config.metrics, endpoint);
+        this.circuitBreaker = config.circuitBreakers == null ? null : config.circuitBreakers.forEndpoint(endpoint);
+    }
+
+    /**
+     * Creates copy of template without session only actions.
+     */
+    private EventCallbackTemplate(@Nonnull EventCallbackTemplate<S, E> template) {
+        this.config = template.config;
+        this.endpoint = template.endpoint;
+        this.validationErrorTypeToken = template.validationErrorTypeToken;
+        this.onCreateActions = template.onCreateActions.crossSessionOnly();
+        this.onSuccessActions = template.onSuccessActions.crossSessionOnly();
+        this.onErrorActions = template.onErrorActions.crossSessionOnly();
+        this.onStatusCodeActions = template.onStatusCodeActions.crossSessionOnly();
+        this.lastKnownResults = template.lastKnownResults;
+        this.lastKnownResultKey = template.lastKnownResultKey;
+        this.retryPolicy = template.retryPolicy;
+        this.postHelper = template.postHelper;
+        this.circuitBreaker = template.circuitBreaker;
+        this.crossSessionOnly = this;
+    }
+
+    /**
+     * @return template that executes only actions valid between sessions. Used
+     * by callbacks whose session has ended, so they do not keep references to
+     * session only events.
+     */
+    EventCallbackTemplate<S, E> crossSessionOnly() {
+        EventCallbackTemplate<S, E> result = crossSessionOnly;
+        if (result == null) {
+            // racing threads may create equal copies, which is harmless
+            result = new EventCallbackTemplate<S, E>(this);
+            crossSessionOnly = result;
+        }
+        return result;
+    }
+
+    private void validateArgs() {
+        Validate.notNull(validationErrorTypeToken);
+        Validate.notNull(onCreateActions);
+        Validate.notNull(onSuccessActions);
+        Validate.notNull(onErrorActions);
+        Validate.notNull(onStatusCodeActions);
+        onCreateActions.validate();
+        onSuccessActions.validate();
+        onErrorActions.validate();
+        onStatusCodeActions.validate();
+    }
+
+    /**
+     * Creates callback bound to current session and executes its onCreate actions.
+     *
+     * @return callback ready to be passed to Retrofit
+     */
+    public EventCallback<S, E> newCallback() {
+        return new EventCallback<S, E>(this, config.sessionIdProvider.get());
+    }
+
+    @Override
+    public String toString() {
+        return "EventCallbackTemplate{" + "config=" + config + ",\n"
+                + "endpoint=" + endpoint + ",\n"
+                + "validationErrorTypeToken=" + validationErrorTypeToken + ",\n"
+                + "onCreateActions=" + onCreateActions + ",\n"
+                + "onSuccessActions=" + onSuccessActions + ",\n"
+                + "onErrorActions=" + onErrorActions + ",\n"
+                + "onStatusCodeActions=" + onStatusCodeActions + ",\n"
+                + "lastKnownResults=" + lastKnownResults + ", lastKnownResultKey=" + lastKnownResultKey + ",\n"
+                + "retryPolicy=" + retryPolicy + '}';
+    }
+}
@@ -0,0 +1,95 @@
+package com.byoutline.eventcallback;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Up to 32 boolean flags packed into single {@link AtomicInteger}. Flags are
+ * addressed by bit masks (see {@link #flag(int)}), so several of them can be
+ * changed with one compare and set, and read together atomically.
+ * <p>
+ * Pass it to {@link EventCallbackBuilder.ActionsSetter#setFlags(FlagGroup, int)}
+ * instead of separate {@link java.util.concurrent.atomic.AtomicBoolean}s, for
+ * example to track loading and error state of a screen.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class FlagGroup {
+
+    public static final int MAX_FLAGS = Integer.SIZE;
+
+    private final AtomicInteger bits;
+
+    public FlagGroup() {
+        this(0);
+    }
+
+    /**
+     * @param initialBits flags that should be initially set.
+     */
+    public FlagGroup(int initialBits) {
+        this.bits = new AtomicInteger(initialBits);
+    }
+
+    /**
+     * @param index index of flag, from 0 to 31.
+     * @return mask of single flag.
+     */
+    public static int flag(int index) {
+        Validate.isTrue(index >= 0 && index < MAX_FLAGS, "Flag index must be between 0 and 31, was: %d", index);
+        return 1 << index;
+    }
+
+    /**
+     * @return current state of all flags.
+     */
+    public int get() {
+        return bits.get();
+    }
+
+    /**
+     * @return true if every flag from mask is set.
+     */
+    public boolean isSet(int mask) {
+        return (bits.get() & mask) == mask;
+    }
+
+    /**
+     * @return true if at least one flag from mask is set.
+     */
+    public boolean isAnySet(int mask) {
+        return (bits.get() & mask) != 0;
+    }
+
+    public void set(int mask) {
+        update(mask, 0);
+    }
+
+    public void clear(int mask) {
+        update(0, mask);
+    }
+
+    /**
+     * Atomically sets and clears given flags. If same flag is in both masks it
+     * will be set.
+     *
+     * @param setMask   flags to set.
+     * @param clearMask flags to clear.
+     * @return state of flags before update.
+     */
+    public int update(int setMask, int clearMask) {
+        while (true) {
+            int current = bits.get();
+            int next = (current & ~clearMask) | setMask;
+            if (current == next || bits.compareAndSet(current, next)) {
+                return current;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FlagGroup{" + "bits=" + Integer.toBinaryString(bits.get()) + '}';
+    }
+}
@@ -0,0 +1,111 @@
+package com.byoutline.eventcallback;
+
+import retrofit.client.Response;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Stores last successful result for each key, for callbacks built with
+ * {@link EventCallbackBuilder#staleWhileRevalidate(LastKnownResults, Object)}.
+ * Such callbacks post stored result to their onSuccess response events as soon
+ * as they are created, and post fresh result to them only if it differs from
+ * stored one.
+ * <p>
+ * Results are bound to session in which they were received.
+ *
+ * @param <S> Type of response returned by server on success.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class LastKnownResults<S> {
+
+    private final Comparator<? super S> comparator;
+    private final ConcurrentMap<Object, Snapshot<S>> results = new ConcurrentHashMap<Object, Snapshot<S>>();
+
+    /**
+     * Creates store that compares results with {@link Object#equals(Object)}.
+     */
+    public LastKnownResults() {
+        this(null);
+    }
+
+    /**
+     * @param comparator returns 0 for results that should be considered equal,
+     *                   or null to use {@link Object#equals(Object)}.
+     */
+    public LastKnownResults(@Nullable Comparator<? super S> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * @return result stored for given key in given session, or null.
+     */
+    @Nullable
+    Snapshot<S> get(@Nonnull Object key, @Nullable String sessionId) {
+        Snapshot<S> snapshot = results.get(key);
+        if (snapshot == null || !isSameSession(snapshot.sessionId, sessionId)) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Stores result.
+     *
+     * @return false if result is equal to one previously stored in the same session.
+     */
+    boolean update(@Nonnull Object key, @Nullable S result, @Nullable Response response, @Nullable String sessionId) {
+        Response withoutBody = response == null ? null : new Response(response.getUrl(), response.getStatus(),
+                response.getReason(), response.getHeaders(), null);
+        Snapshot<S> previous = results.put(key, new Snapshot<S>(result, withoutBody, sessionId));
+        if (previous == null || !isSameSession(previous.sessionId, sessionId)) {
+            return true;
+        }
+        return !isEqual(previous.result, result);
+    }
+
+    private static boolean isSameSession(String storedSessionId, String sessionId) {
+        return storedSessionId == null ? sessionId == null : storedSessionId.equals(sessionId);
+    }
+
+    private boolean isEqual(S previous, S current) {
+        if (previous == null || current == null) {
+            return previous == current;
+        }
+        if (comparator != null) {
+            return comparator.compare(previous, current) == 0;
+        }
+        return previous.equals(current);
+    }
+
+    /**
+     * Removes stored result, so next callback for this key will not post stale result.
+     */
+    public void invalidate(@Nonnull Object key) {
+        results.remove(key);
+    }
+
+    public void clear() {
+        results.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "LastKnownResults{" + "comparator=" + comparator + ", keys=" + results.keySet() + '}';
+    }
+
+    static final class Snapshot<S> {
+        final S result;
+        final Response response;
+        final String sessionId;
+
+        Snapshot(S result, Response response, String sessionId) {
+            this.result = result;
+            this.response = response;
+            this.sessionId = sessionId;
+        }
+    }
+}
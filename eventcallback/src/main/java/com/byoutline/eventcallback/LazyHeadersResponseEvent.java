@@ -0,0 +1,21 @@
+package com.byoutline.eventcallback;
+
+import javax.annotation.Nullable;
+
+/**
+ * {@link RetrofitResponseEvent} that receives headers as {@link ResponseHeaders}
+ * view shared with other events of the same completion, instead of header list.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface LazyHeadersResponseEvent<R> extends RetrofitResponseEvent<R> {
+
+    void setHeadersAndStatus(@Nullable ResponseHeaders headers, int status);
+
+    /**
+     * @return names of headers that subscribers will read, or null if any
+     * header may be read. Only needed headers are indexed.
+     */
+    @Nullable
+    String[] neededHeaders();
+}
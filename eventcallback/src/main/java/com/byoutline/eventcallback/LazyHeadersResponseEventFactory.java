@@ -0,0 +1,22 @@
+package com.byoutline.eventcallback;
+
+import javax.annotation.Nullable;
+
+/**
+ * {@link ResponseEventFactory} that declares headers read by subscribers of
+ * events it creates, like {@link LazyHeadersResponseEvent#neededHeaders()}.
+ * Other factories may create events that read any header, so all headers are
+ * indexed for callbacks that use them.
+ *
+ * @param <R> Type of response that will be set on created event.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface LazyHeadersResponseEventFactory<R> extends ResponseEventFactory<R> {
+
+    /**
+     * @return names of headers that subscribers of created events will read,
+     * or null if any header may be read.
+     */
+    @Nullable
+    String[] neededHeaders();
+}
@@ -0,0 +1,172 @@
+package com.byoutline.eventcallback;
+
+import com.byoutline.eventcallback.internal.SessionChecker;
+import com.byoutline.eventcallback.util.Clock;
+import org.apache.commons.lang3.Validate;
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Provider;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps successful results for configured time, so repeated requests can
+ * skip network. On hit callback is created from template and its success is
+ * called synchronously with cached result, so onSuccess actions and shared
+ * success handlers run exactly as for network response.
+ * <p>
+ * Entries are bound to session in which call was started and are not returned
+ * in different session. When cache is full least recently used entry is evicted.
+ * Cached {@link Response} keeps url, status, reason and headers, but not body.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class ResponseCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Clock clock;
+    private final LinkedHashMap<Object, CachedResult> entries;
+
+    /**
+     * @param maxSize maximum number of cached results.
+     * @param ttl     how long result is valid.
+     * @param unit    unit of ttl.
+     */
+    public ResponseCache(int maxSize, long ttl, @Nonnull TimeUnit unit) {
+        this(maxSize, ttl, unit, Clock.SYSTEM);
+    }
+
+    public ResponseCache(final int maxSize, long ttl, @Nonnull TimeUnit unit, @Nonnull Clock clock) {
+        Validate.isTrue(maxSize > 0, "maxSize must be positive: %d", maxSize);
+        Validate.isTrue(ttl > 0, "ttl must be positive: %d", ttl);
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<Object, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, CachedResult> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Replays cached result if there is valid one for given key, otherwise
+     * starts call and caches its successful result.
+     *
+     * @param key      identity of request (for example endpoint and its arguments).
+     *                 Calls with the same key must return the same response type.
+     * @param template actions that should be executed for result.
+     * @param invoker  starts network call on cache miss.
+     * @return true if result was taken from cache.
+     */
+    @SuppressWarnings("unchecked")
+    public <S> boolean call(@Nonnull final Object key, @Nonnull EventCallbackTemplate<S, ?> template,
+                            @Nonnull final CallInvoker<S> invoker) {
+        final String sessionId = template.config.sessionIdProvider.get();
+        CachedResult cached = get(key, template.config.sessionIdProvider);
+        EventCallback<S, ?> callback = newCallback(template, sessionId);
+        if (cached != null) {
+            callback.replay((S) cached.result, cached.response);
+            return true;
+        }
+        // started through callback, so retried attempts are cached too
+        callback.call(new CallInvoker<S>() {
+            @Override
+            public void invoke(Callback<S> callback) {
+                invoker.invoke(new CachingCallback<S>(key, sessionId, callback));
+            }
+        });
+        return false;
+    }
+
+    private static <S, E> EventCallback<S, E> newCallback(EventCallbackTemplate<S, E> template, String sessionId) {
+        return new EventCallback<S, E>(template, sessionId);
+    }
+
+    @Nullable
+    private synchronized CachedResult get(Object key, Provider<String> sessionIdProvider) {
+        CachedResult entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        boolean expired = clock.nanoTime() - entry.storedNanos >= ttlNanos;
+        if (expired || !new SessionChecker(sessionIdProvider, entry.sessionId).isSameSession()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void put(Object key, CachedResult entry) {
+        entries.put(key, entry);
+    }
+
+    /**
+     * Removes cached result, so next call with this key goes to network.
+     */
+    public synchronized void invalidate(@Nonnull Object key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return number of stored entries, including expired ones that were not yet requested.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ResponseCache{" + "maxSize=" + maxSize + ", ttlNanos=" + ttlNanos + ", size=" + entries.size() + '}';
+    }
+
+    private static final class CachedResult {
+        final Object result;
+        final Response response;
+        final String sessionId;
+        final long storedNanos;
+
+        CachedResult(Object result, Response response, String sessionId, long storedNanos) {
+            this.result = result;
+            this.response = response;
+            this.sessionId = sessionId;
+            this.storedNanos = storedNanos;
+        }
+    }
+
+    private final class CachingCallback<S> implements Callback<S> {
+        private final Object key;
+        private final String sessionId;
+        private final Callback<S> delegate;
+
+        CachingCallback(Object key, String sessionId, Callback<S> delegate) {
+            this.key = key;
+            this.sessionId = sessionId;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void success(S result, Response response) {
+            Response withoutBody = response == null ? null : new Response(response.getUrl(), response.getStatus(),
+                    response.getReason(), response.getHeaders(), null);
+            put(key, new CachedResult(result, withoutBody, sessionId, clock.nanoTime()));
+            delegate.success(result, response);
+        }
+
+        @Override
+        public void failure(RetrofitError error) {
+            delegate.failure(error);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.byoutline.eventcallback;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Part of list response posted by {@link StreamingEventCallback} while rest of
+ * the list is still being parsed.
+ *
+ * @param <T> Type of list items.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class ResponseChunk<T> {
+
+    /**
+     * Position of first item of this chunk in whole response list.
+     */
+    public final int firstIndex;
+    public final List<T> items;
+
+    public ResponseChunk(int firstIndex, @Nonnull List<T> items) {
+        this.firstIndex = firstIndex;
+        this.items = items;
+    }
+
+    /**
+     * @return position of last item of this chunk in whole response list.
+     */
+    public int lastIndex() {
+        return firstIndex + items.size() - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseChunk{" + "items " + firstIndex + ".." + lastIndex() + '}';
+    }
+}
@@ -0,0 +1,12 @@
+package com.byoutline.eventcallback;
+
+/**
+ * Creates {@link ResponseEvent} instance for single callback completion.
+ *
+ * @param <R> Type of response that will be set on created event.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface ResponseEventFactory<R> {
+
+    ResponseEvent<R> create();
+}
@@ -0,0 +1,73 @@
+package com.byoutline.eventcallback;
+
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of {@link ResponseEvent}s of single type. Events are taken from
+ * pool for each completion and, if bus implements {@link SynchronousBus}, returned
+ * to it as soon as {@link IBus#post(Object)} returns. Response, headers and status
+ * are cleared before event goes back to pool. With other buses (like
+ * {@code AsyncIBus} or {@code PostFromAnyThreadBus}), that may deliver event
+ * later, events are never returned, so pool works like plain factory.
+ * <p>
+ * Note that {@code OttoBus} is not synchronous: events posted from inside of
+ * subscriber are queued until it returns. Implement {@link SynchronousBus}
+ * only if no callback is completed from subscriber. Subscribers must not keep
+ * reference to received pooled event.
+ *
+ * @param <R> Type of response that will be set on pooled events.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class ResponseEventPool<R> implements LazyHeadersResponseEventFactory<R> {
+
+    private final ResponseEventFactory<R> factory;
+    private final BlockingQueue<ResponseEvent<R>> pooled;
+
+    /**
+     * @param factory creates events when pool is empty.
+     * @param maxSize maximum number of idle events kept in pool.
+     */
+    public ResponseEventPool(@Nonnull ResponseEventFactory<R> factory, int maxSize) {
+        Validate.isTrue(maxSize > 0, "maxSize must be positive: %d", maxSize);
+        this.factory = factory;
+        this.pooled = new ArrayBlockingQueue<ResponseEvent<R>>(maxSize);
+    }
+
+    @Override
+    public ResponseEvent<R> create() {
+        ResponseEvent<R> event = pooled.poll();
+        return event != null ? event : factory.create();
+    }
+
+    /**
+     * @return headers declared by wrapped factory, or null if it does not
+     * declare them.
+     */
+    @Nullable
+    @Override
+    public String[] neededHeaders() {
+        return factory instanceof LazyHeadersResponseEventFactory
+                ? ((LazyHeadersResponseEventFactory<R>) factory).neededHeaders() : null;
+    }
+
+    /**
+     * Returns event to pool. If pool is full event is left for garbage collector.
+     */
+    public void release(@Nonnull ResponseEvent<R> event) {
+        event.setResponse(null);
+        if (event instanceof RetrofitResponseEvent) {
+            ((RetrofitResponseEvent<R>) event).setHeadersAndStatus(null, 0);
+        }
+        pooled.offer(event);
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseEventPool{" + "factory=" + factory + ", idle=" + pooled.size() + '}';
+    }
+}
@@ -0,0 +1,126 @@
+package com.byoutline.eventcallback;
+
+import retrofit.client.Header;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read only view of headers of single response, shared by all events posted
+ * for it. Header names are matched case-insensitively. Index of header values
+ * is built on first lookup, and contains only headers that events declared
+ * as needed (see {@link LazyHeadersResponseEvent#neededHeaders()}). Other
+ * headers are still available, but are found by scanning header list.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class ResponseHeaders {
+
+    private final List<Header> headers;
+    /**
+     * Lower case names of indexed headers, or null if all should be indexed.
+     */
+    private final Set<String> indexedNames;
+    private volatile Map<String, List<String>> index;
+
+    public ResponseHeaders(@Nonnull List<Header> headers) {
+        this(headers, null);
+    }
+
+    /**
+     * @param headers      headers of response. List is not copied.
+     * @param indexedNames lower case names of headers that should be indexed,
+     *                     or null to index all of them.
+     */
+    public ResponseHeaders(@Nonnull List<Header> headers, @Nullable Set<String> indexedNames) {
+        this.headers = headers;
+        this.indexedNames = indexedNames;
+    }
+
+    static String normalize(@Nonnull String name) {
+        return name.toLowerCase(Locale.US);
+    }
+
+    /**
+     * @return headers in order returned by server.
+     */
+    public List<Header> asList() {
+        return headers;
+    }
+
+    /**
+     * @return value of first header with given name or null if there is none.
+     */
+    @Nullable
+    public String get(@Nonnull String name) {
+        List<String> values = getAll(name);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * @return values of all headers with given name.
+     */
+    public List<String> getAll(@Nonnull String name) {
+        String normalizedName = normalize(name);
+        if (indexedNames != null && !indexedNames.contains(normalizedName)) {
+            return scan(normalizedName);
+        }
+        List<String> values = index().get(normalizedName);
+        return values == null ? Collections.<String>emptyList() : values;
+    }
+
+    private Map<String, List<String>> index() {
+        Map<String, List<String>> result = index;
+        if (result == null) {
+            // building index twice from concurrent threads is harmless
+            result = buildIndex();
+            index = result;
+        }
+        return result;
+    }
+
+    private Map<String, List<String>> buildIndex() {
+        Map<String, List<String>> result = new HashMap<String, List<String>>();
+        for (Header header : headers) {
+            if (header.getName() == null) {
+                continue;
+            }
+            String name = normalize(header.getName());
+            if (indexedNames != null && !indexedNames.contains(name)) {
+                continue;
+            }
+            List<String> values = result.get(name);
+            if (values == null) {
+                values = new ArrayList<String>(1);
+                result.put(name, values);
+            }
+            values.add(header.getValue());
+        }
+        return result;
+    }
+
+    private List<String> scan(String normalizedName) {
+        List<String> values = Collections.emptyList();
+        for (Header header : headers) {
+            if (header.getName() != null && normalizedName.equals(normalize(header.getName()))) {
+                if (values.isEmpty()) {
+                    values = new ArrayList<String>(1);
+                }
+                values.add(header.getValue());
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseHeaders{" + "headers=" + headers + '}';
+    }
+}
@@ -2,26 +2,74 @@ package com.byoutline.eventcallback;
 
 import retrofit.client.Header;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Default implementation of {@link RetrofitResponseEvent}.
+ * Default implementation of {@link RetrofitResponseEvent}. Headers are kept as
+ * {@link ResponseHeaders} view, so single headers can be read with
+ * {@link #getHeader(String)} without copying or scanning whole list.
  *
  * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
  */
 public class RetrofitResponseEventImpl<R> extends ResponseEventImpl<R>
-        implements RetrofitResponseEvent<R> {
-    private List<Header> headers;
+        implements LazyHeadersResponseEvent<R> {
+    private final String[] neededHeaders;
+    private ResponseHeaders headers;
     private int status;
 
+    /**
+     * Creates event that may read any header.
+     */
+    public RetrofitResponseEventImpl() {
+        this.neededHeaders = null;
+    }
+
+    /**
+     * @param neededHeaders names of headers that subscribers will read with
+     *                      {@link #getHeader(String)}.
+     */
+    public RetrofitResponseEventImpl(@Nonnull String... neededHeaders) {
+        this.neededHeaders = neededHeaders;
+    }
+
     @Override
     public void setHeadersAndStatus(List<Header> headers, int status) {
+        setHeadersAndStatus(headers == null ? null : new ResponseHeaders(headers), status);
+    }
+
+    @Override
+    public void setHeadersAndStatus(@Nullable ResponseHeaders headers, int status) {
         this.headers = headers;
         this.status = status;
     }
 
+    @Nullable
+    @Override
+    public String[] neededHeaders() {
+        return neededHeaders;
+    }
+
     public List<Header> getHeaders() {
-        return headers;
+        return headers == null ? null : headers.asList();
+    }
+
+    /**
+     * @return value of first header with given name (compared case-insensitively)
+     * or null.
+     */
+    @Nullable
+    public String getHeader(@Nonnull String name) {
+        return headers == null ? null : headers.get(name);
+    }
+
+    /**
+     * @return values of all headers with given name (compared case-insensitively).
+     */
+    public List<String> getHeaderValues(@Nonnull String name) {
+        return headers == null ? Collections.<String>emptyList() : headers.getAll(name);
     }
 
     public int getStatus() {
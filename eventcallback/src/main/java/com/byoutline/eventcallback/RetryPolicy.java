@@ -0,0 +1,149 @@
+package com.byoutline.eventcallback;
+
+import com.byoutline.eventcallback.util.Scheduler;
+import org.apache.commons.lang3.Validate;
+import retrofit.RetrofitError;
+
+import javax.annotation.Nonnull;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides if and when failed call should be repeated. Set it with
+ * {@link EventCallbackBuilder#retry(RetryPolicy, CallInvoker)}.
+ * <p>
+ * Delay before n-th retry is {@code initialDelay * 2^(n-1)}, limited by
+ * {@code maxDelay} and then reduced by random part of up to {@code jitter}
+ * of its value, so clients that failed at the same time do not retry at the
+ * same time. By default network errors and 502, 503, 504 status codes are retried.
+ * <p>
+ * Instances are immutable, {@code with*} methods return modified copies.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class RetryPolicy {
+
+    private static final long DEFAULT_INITIAL_DELAY_MILLIS = 200;
+    private static final long DEFAULT_MAX_DELAY_MILLIS = 10000;
+    private static final double DEFAULT_JITTER = 0.5;
+    private static final int[] DEFAULT_STATUS_CODES = {502, 503, 504};
+
+    final Scheduler scheduler;
+    private final int maxAttempts;
+    private final long initialDelayNanos;
+    private final long maxDelayNanos;
+    private final double jitter;
+    private final BitSet retryableStatusCodes;
+    private final boolean retryNetworkErrors;
+    private final Random random;
+
+    /**
+     * @param maxAttempts maximum number of calls, including first one.
+     * @param scheduler   schedules repeated calls.
+     */
+    public RetryPolicy(int maxAttempts, @Nonnull Scheduler scheduler) {
+        this(maxAttempts, scheduler, TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_DELAY_MILLIS),
+                TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_DELAY_MILLIS), DEFAULT_JITTER,
+                toBitSet(DEFAULT_STATUS_CODES), true, new Random());
+    }
+
+    private RetryPolicy(int maxAttempts, @Nonnull Scheduler scheduler, long initialDelayNanos, long maxDelayNanos,
+                        double jitter, @Nonnull BitSet retryableStatusCodes, boolean retryNetworkErrors,
+                        @Nonnull Random random) {
+        Validate.isTrue(maxAttempts > 0, "maxAttempts must be positive: %d", maxAttempts);
+        Validate.notNull(scheduler);
+        this.maxAttempts = maxAttempts;
+        this.scheduler = scheduler;
+        this.initialDelayNanos = initialDelayNanos;
+        this.maxDelayNanos = maxDelayNanos;
+        this.jitter = jitter;
+        this.retryableStatusCodes = retryableStatusCodes;
+        this.retryNetworkErrors = retryNetworkErrors;
+        this.random = random;
+    }
+
+    private static BitSet toBitSet(int[] statusCodes) {
+        BitSet result = new BitSet();
+        for (int statusCode : statusCodes) {
+            Validate.isTrue(statusCode >= 0, "Invalid status code: %d", statusCode);
+            result.set(statusCode);
+        }
+        return result;
+    }
+
+    public RetryPolicy withBackoff(long initialDelay, long maxDelay, @Nonnull TimeUnit unit) {
+        Validate.isTrue(initialDelay >= 0 && maxDelay >= initialDelay, "Invalid delays: %d, %d", initialDelay, maxDelay);
+        return new RetryPolicy(maxAttempts, scheduler, unit.toNanos(initialDelay), unit.toNanos(maxDelay),
+                jitter, retryableStatusCodes, retryNetworkErrors, random);
+    }
+
+    /**
+     * @param jitter part of delay that is randomized, from 0 (no randomization) to 1.
+     */
+    public RetryPolicy withJitter(double jitter) {
+        Validate.isTrue(jitter >= 0 && jitter <= 1, "jitter must be between 0 and 1: %f", jitter);
+        return new RetryPolicy(maxAttempts, scheduler, initialDelayNanos, maxDelayNanos,
+                jitter, retryableStatusCodes, retryNetworkErrors, random);
+    }
+
+    /**
+     * @param statusCodes status codes that should be retried, replacing default ones.
+     */
+    public RetryPolicy withRetryableStatusCodes(int... statusCodes) {
+        return new RetryPolicy(maxAttempts, scheduler, initialDelayNanos, maxDelayNanos,
+                jitter, toBitSet(statusCodes), retryNetworkErrors, random);
+    }
+
+    public RetryPolicy withNetworkErrorsRetried(boolean retryNetworkErrors) {
+        return new RetryPolicy(maxAttempts, scheduler, initialDelayNanos, maxDelayNanos,
+                jitter, retryableStatusCodes, retryNetworkErrors, random);
+    }
+
+    /**
+     * @param random source of jitter, for example seeded one for tests.
+     */
+    public RetryPolicy withRandom(@Nonnull Random random) {
+        return new RetryPolicy(maxAttempts, scheduler, initialDelayNanos, maxDelayNanos,
+                jitter, retryableStatusCodes, retryNetworkErrors, Validate.notNull(random));
+    }
+
+    /**
+     * @param error    error of last attempt.
+     * @param attempts number of calls already made.
+     * @return true if call should be repeated.
+     */
+    boolean shouldRetry(@Nonnull RetrofitError error, int attempts) {
+        if (attempts >= maxAttempts) {
+            return false;
+        }
+        if (error.isNetworkError()) {
+            return retryNetworkErrors;
+        }
+        return error.getResponse() != null && retryableStatusCodes.get(error.getResponse().getStatus());
+    }
+
+    /**
+     * @param attempts number of calls already made.
+     * @return delay before next call.
+     */
+    long delayNanos(int attempts) {
+        int shift = Math.min(attempts - 1, 62);
+        long delay = initialDelayNanos << shift;
+        // second check catches bits shifted out of long range
+        if (delay < 0 || delay >> shift != initialDelayNanos || delay > maxDelayNanos) {
+            delay = maxDelayNanos;
+        }
+        if (jitter == 0) {
+            return delay;
+        }
+        return delay - (long) (delay * jitter * random.nextDouble());
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" + "maxAttempts=" + maxAttempts + ", initialDelayNanos=" + initialDelayNanos
+                + ", maxDelayNanos=" + maxDelayNanos + ", jitter=" + jitter
+                + ", retryableStatusCodes=" + retryableStatusCodes + ", retryNetworkErrors=" + retryNetworkErrors + '}';
+    }
+}
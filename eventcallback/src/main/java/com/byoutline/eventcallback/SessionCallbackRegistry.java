@@ -0,0 +1,84 @@
+package com.byoutline.eventcallback;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks callbacks that were created, but not yet completed, by configs
+ * created with {@link CallbackConfig#withSessionRegistry(SessionCallbackRegistry)}.
+ * Call {@link #onSessionChanged(boolean)} when user logs out or switches account,
+ * so pending callbacks drop their session only actions immediately instead of
+ * keeping them until request completes.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class SessionCallbackRegistry {
+
+    private static final Cancellable NOT_CANCELLABLE = new Cancellable() {
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final ConcurrentMap<EventCallback<?, ?>, Cancellable> live =
+            new ConcurrentHashMap<EventCallback<?, ?>, Cancellable>();
+
+    void register(@Nonnull EventCallback<?, ?> callback) {
+        live.put(callback, NOT_CANCELLABLE);
+    }
+
+    /**
+     * Sets handle that cancels request of given callback. If callback is not
+     * live (it already completed or session changed) nothing happens.
+     */
+    public void setCancellable(@Nonnull EventCallback<?, ?> callback, @Nonnull Cancellable request) {
+        live.replace(callback, request);
+    }
+
+    void unregister(@Nonnull EventCallback<?, ?> callback) {
+        live.remove(callback);
+    }
+
+    /**
+     * Makes all live callbacks forget their session only actions. Callbacks
+     * are no longer tracked afterwards.
+     *
+     * @param cancelRequests true if requests with handle set by
+     *                       {@link #setCancellable(EventCallback, Cancellable)}
+     *                       should be cancelled. Actions valid between sessions
+     *                       will not be executed for cancelled requests, unless
+     *                       HTTP client reports cancellation as failure.
+     */
+    public void onSessionChanged(boolean cancelRequests) {
+        List<Cancellable> toCancel = new ArrayList<Cancellable>();
+        for (EventCallback<?, ?> callback : live.keySet()) {
+            Cancellable request = live.remove(callback);
+            if (request == null) {
+                // completed concurrently
+                continue;
+            }
+            callback.dropSessionOnlyActions();
+            if (cancelRequests && request != NOT_CANCELLABLE) {
+                toCancel.add(request);
+            }
+        }
+        for (Cancellable request : toCancel) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * @return number of live callbacks.
+     */
+    public int size() {
+        return live.size();
+    }
+
+    @Override
+    public String toString() {
+        return "SessionCallbackRegistry{" + "size=" + live.size() + '}';
+    }
+}
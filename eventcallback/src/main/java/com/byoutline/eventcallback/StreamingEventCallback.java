@@ -0,0 +1,217 @@
+package com.byoutline.eventcallback;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import com.byoutline.eventcallback.internal.EventPoster;
+import org.apache.commons.lang3.Validate;
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+import retrofit.mime.MimeUtil;
+import retrofit.mime.TypedInput;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Callback for endpoints that return large JSON lists. Instead of waiting for
+ * whole list to be deserialized, it reads response body with {@link JsonReader}
+ * and posts every {@code chunkSize} items as {@link ResponseChunk} set on new
+ * {@link ResponseEvent}, so only one chunk of items has to be kept in memory
+ * and first items reach subscribers before parsing ends.
+ * <p>
+ * Use it as callback of Retrofit method returning {@link Response}. After last
+ * chunk onSuccess actions of completion template are executed with number of
+ * parsed items. Failures, including malformed body, are passed to its onError
+ * actions. Chunks are valid in this session only and are posted like other
+ * events of completion template (with its metrics endpoint, returning pooled
+ * events only to synchronous buses).
+ * <p>
+ * Body is parsed on completion executor of config (if set), or on thread that
+ * completed call.
+ *
+ * @param <T> Type of list items.
+ * @param <E> Type of response returned by server on error.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public class StreamingEventCallback<T, E> implements Callback<Response> {
+
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    private final EventCallback<Integer, E> completionCallback;
+    private final EventPoster poster;
+    private final Executor parseExecutor;
+    private final TypeAdapter<T> itemAdapter;
+    private final String itemsField;
+    private final int chunkSize;
+    private final ResponseEventFactory<ResponseChunk<T>> chunkEvents;
+
+    /**
+     * Creates callback for responses that are JSON array of items.
+     *
+     * @see #StreamingEventCallback(EventCallbackTemplate, Gson, TypeToken, String, int, ResponseEventFactory)
+     */
+    public StreamingEventCallback(@Nonnull EventCallbackTemplate<Integer, E> completionTemplate,
+                                  @Nonnull Gson gson, @Nonnull TypeToken<T> itemType, int chunkSize,
+                                  @Nonnull ResponseEventFactory<ResponseChunk<T>> chunkEvents) {
+        this(completionTemplate, gson, itemType, null, chunkSize, chunkEvents);
+    }
+
+    /**
+     * @param completionTemplate actions executed on creation, after last chunk
+     *                           (with number of items) and on error. It cannot
+     *                           have retry policy.
+     * @param gson               used to deserialize single items.
+     * @param itemType           type of list items.
+     * @param itemsField         name of top level field that holds item array,
+     *                           or null if whole response is the array. Other
+     *                           fields are skipped.
+     * @param chunkSize          maximum number of items in single chunk.
+     * @param chunkEvents        creates event for every chunk.
+     */
+    public StreamingEventCallback(@Nonnull EventCallbackTemplate<Integer, E> completionTemplate,
+                                  @Nonnull Gson gson, @Nonnull TypeToken<T> itemType, @Nullable String itemsField,
+                                  int chunkSize, @Nonnull ResponseEventFactory<ResponseChunk<T>> chunkEvents) {
+        Validate.isTrue(chunkSize > 0, "chunkSize must be positive: %d", chunkSize);
+        Validate.isTrue(completionTemplate.retryPolicy == null, "Streaming callback cannot be retried");
+        Validate.notNull(chunkEvents, "chunkEvents cannot be null");
+        this.completionCallback = completionTemplate.newCallback();
+        this.poster = completionTemplate.postHelper;
+        this.parseExecutor = completionTemplate.config.completionExecutor;
+        this.itemAdapter = gson.getAdapter(itemType);
+        this.itemsField = itemsField;
+        this.chunkSize = chunkSize;
+        this.chunkEvents = chunkEvents;
+    }
+
+    @Override
+    public void success(Response result, final Response response) {
+        if (parseExecutor == null) {
+            consume(response);
+            return;
+        }
+        parseExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                consume(response);
+            }
+        });
+    }
+
+    @Override
+    public void failure(RetrofitError error) {
+        completionCallback.failure(error);
+    }
+
+    /**
+     * Parses body of response on calling thread. Can be used directly with
+     * synchronous Retrofit calls.
+     */
+    public void consume(@Nonnull Response response) {
+        TypedInput body = response.getBody();
+        if (body == null) {
+            completionCallback.success(0, response);
+            return;
+        }
+        InputStream in = null;
+        int itemCount;
+        try {
+            in = body.in();
+            String charset = body.mimeType() == null ? DEFAULT_CHARSET : MimeUtil.parseCharset(body.mimeType());
+            itemCount = readItems(new JsonReader(new InputStreamReader(in, charset)), response,
+                    new ResponseHeaders(response.getHeaders()));
+        } catch (MalformedJsonException ex) {
+            completionCallback.failure(RetrofitError.unexpectedError(response.getUrl(), ex));
+            return;
+        } catch (IOException ex) {
+            completionCallback.failure(RetrofitError.networkError(response.getUrl(), ex));
+            return;
+        } catch (JsonParseException ex) {
+            completionCallback.failure(RetrofitError.unexpectedError(response.getUrl(), ex));
+            return;
+        } catch (IllegalStateException ex) {
+            // body has different structure than expected
+            completionCallback.failure(RetrofitError.unexpectedError(response.getUrl(), ex));
+            return;
+        } finally {
+            closeQuietly(in);
+        }
+        completionCallback.success(itemCount, response);
+    }
+
+    private int readItems(JsonReader reader, Response response, ResponseHeaders headers) throws IOException {
+        if (itemsField == null) {
+            return readArray(reader, response, headers);
+        }
+        int itemCount = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (itemsField.equals(reader.nextName())) {
+                itemCount = readArray(reader, response, headers);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return itemCount;
+    }
+
+    private int readArray(JsonReader reader, Response response, ResponseHeaders headers) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        int firstIndex = 0;
+        List<T> items = new ArrayList<T>(chunkSize);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            items.add(itemAdapter.read(reader));
+            if (items.size() == chunkSize) {
+                postChunk(firstIndex, items, response, headers);
+                firstIndex += chunkSize;
+                items = new ArrayList<T>(chunkSize);
+            }
+        }
+        reader.endArray();
+        if (!items.isEmpty()) {
+            postChunk(firstIndex, items, response, headers);
+        }
+        return firstIndex + items.size();
+    }
+
+    private void postChunk(int firstIndex, List<T> items, Response response, ResponseHeaders headers) {
+        if (!completionCallback.isSameSession()) {
+            return;
+        }
+        poster.postNewResponseEvent(new ResponseChunk<T>(firstIndex, items), response, headers,
+                chunkEvents, Priority.NORMAL);
+    }
+
+    private static void closeQuietly(@Nullable InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // response is already consumed or failed
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StreamingEventCallback{" + "itemsField=" + itemsField + ", chunkSize=" + chunkSize
+                + ", completionCallback=" + completionCallback + '}';
+    }
+}
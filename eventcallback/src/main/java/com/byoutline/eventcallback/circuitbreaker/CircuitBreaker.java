@@ -0,0 +1,110 @@
+package com.byoutline.eventcallback.circuitbreaker;
+
+import com.byoutline.eventcallback.util.Clock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Circuit breaker of single endpoint. Created by {@link CircuitBreakers}.
+ * <ul>
+ * <li> {@link State#CLOSED} - calls are allowed. Breaker opens when failure
+ * rate in sliding window exceeds threshold (after minimum number of calls). </li>
+ * <li> {@link State#OPEN} - calls are rejected until open duration passes. </li>
+ * <li> {@link State#HALF_OPEN} - single trial call is allowed. Its success
+ * closes breaker, failure opens it again. </li>
+ * </ul>
+ * All state is kept in atomic variables, no locks are taken.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
+    private final String endpoint;
+    private final CircuitBreakers settings;
+    private final Clock clock;
+    private final SlidingWindow window;
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
+    /**
+     * Time of opening in OPEN state, time of trial call start in HALF_OPEN state.
+     */
+    private final AtomicLong stateChangeNanos = new AtomicLong();
+
+    CircuitBreaker(String endpoint, CircuitBreakers settings, Clock clock) {
+        this.endpoint = endpoint;
+        this.settings = settings;
+        this.clock = clock;
+        this.window = new SlidingWindow(settings.windowBuckets, settings.windowNanos / settings.windowBuckets);
+    }
+
+    /**
+     * @return true if call may be made. In half open state only first caller
+     * gets true, until trial call completes (or open duration passes).
+     */
+    public boolean allowRequest() {
+        int currentState = state.get();
+        if (currentState == CLOSED) {
+            return true;
+        }
+        long now = clock.nanoTime();
+        long changed = stateChangeNanos.get();
+        if (now - changed < settings.openNanos) {
+            return false;
+        }
+        // open duration passed, or trial call did not complete in that time
+        if (state.compareAndSet(currentState, HALF_OPEN) || currentState == HALF_OPEN) {
+            return stateChangeNanos.compareAndSet(changed, now);
+        }
+        return state.get() == CLOSED;
+    }
+
+    public void onSuccess() {
+        if (state.get() == HALF_OPEN && state.compareAndSet(HALF_OPEN, CLOSED)) {
+            window.reset();
+            return;
+        }
+        window.record(false, clock.nanoTime());
+    }
+
+    public void onFailure() {
+        long now = clock.nanoTime();
+        int currentState = state.get();
+        if (currentState == HALF_OPEN) {
+            if (state.compareAndSet(HALF_OPEN, OPEN)) {
+                stateChangeNanos.set(now);
+            }
+            return;
+        }
+        window.record(true, now);
+        if (currentState == CLOSED && isFailureRateExceeded(now) && state.compareAndSet(CLOSED, OPEN)) {
+            stateChangeNanos.set(now);
+        }
+    }
+
+    private boolean isFailureRateExceeded(long now) {
+        long[] counts = window.counts(now);
+        long total = counts[0] + counts[1];
+        return total >= settings.minimumCalls && counts[1] >= settings.failureRateThreshold * total;
+    }
+
+    public State getState() {
+        return State.values()[state.get()];
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{" + "endpoint=" + endpoint + ", state=" + getState() + '}';
+    }
+}
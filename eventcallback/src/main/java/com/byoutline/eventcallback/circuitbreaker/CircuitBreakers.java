@@ -0,0 +1,82 @@
+package com.byoutline.eventcallback.circuitbreaker;
+
+import com.byoutline.eventcallback.util.Clock;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps {@link CircuitBreaker} for each endpoint, all with the same settings.
+ * Set it with {@link com.byoutline.eventcallback.CallbackConfig#withCircuitBreakers(CircuitBreakers)}
+ * and start calls with {@link com.byoutline.eventcallback.EventCallback#call(com.byoutline.eventcallback.CallInvoker)},
+ * so calls to endpoint with open breaker fail immediately.
+ * <p>
+ * Network errors and 5xx responses count as failures.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class CircuitBreakers {
+
+    public static final int DEFAULT_WINDOW_BUCKETS = 10;
+
+    final double failureRateThreshold;
+    final int minimumCalls;
+    final long windowNanos;
+    final int windowBuckets;
+    final long openNanos;
+    private final Clock clock;
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+    /**
+     * Creates breakers that open when half of at least 10 calls in last 10
+     * seconds failed and stay open for 30 seconds.
+     */
+    public CircuitBreakers() {
+        this(0.5, 10, 10, 30, TimeUnit.SECONDS, Clock.SYSTEM);
+    }
+
+    /**
+     * @param failureRateThreshold part of failed calls (0 to 1) that opens breaker.
+     * @param minimumCalls         number of calls in window needed to open breaker.
+     * @param window               length of sliding window.
+     * @param openDuration         how long breaker rejects calls before allowing trial call.
+     * @param unit                 unit of window and openDuration.
+     * @param clock                source of time.
+     */
+    public CircuitBreakers(double failureRateThreshold, int minimumCalls, long window, long openDuration,
+                           @Nonnull TimeUnit unit, @Nonnull Clock clock) {
+        Validate.isTrue(failureRateThreshold > 0 && failureRateThreshold <= 1,
+                "failureRateThreshold must be in (0, 1]: %f", failureRateThreshold);
+        Validate.isTrue(minimumCalls > 0, "minimumCalls must be positive: %d", minimumCalls);
+        Validate.isTrue(unit.toNanos(window) >= DEFAULT_WINDOW_BUCKETS, "window too short: %d", window);
+        Validate.isTrue(openDuration > 0, "openDuration must be positive: %d", openDuration);
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.windowNanos = unit.toNanos(window);
+        this.windowBuckets = DEFAULT_WINDOW_BUCKETS;
+        this.openNanos = unit.toNanos(openDuration);
+        this.clock = Validate.notNull(clock);
+    }
+
+    @Nonnull
+    public CircuitBreaker forEndpoint(@Nonnull String endpoint) {
+        CircuitBreaker breaker = breakers.get(endpoint);
+        if (breaker == null) {
+            CircuitBreaker newBreaker = new CircuitBreaker(endpoint, this, clock);
+            breaker = breakers.putIfAbsent(endpoint, newBreaker);
+            if (breaker == null) {
+                breaker = newBreaker;
+            }
+        }
+        return breaker;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreakers{" + "failureRateThreshold=" + failureRateThreshold + ", minimumCalls=" + minimumCalls
+                + ", windowNanos=" + windowNanos + ", openNanos=" + openNanos + ", breakers=" + breakers.values() + '}';
+    }
+}
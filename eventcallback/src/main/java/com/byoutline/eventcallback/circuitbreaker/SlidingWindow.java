@@ -0,0 +1,71 @@
+package com.byoutline.eventcallback.circuitbreaker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counters of successes and failures in last {@code bucketCount}
+ * time buckets. Bucket is reset by first thread that records into it after
+ * its time passed, so counts recorded concurrently with reset may be lost,
+ * which is acceptable for failure rate estimation.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+final class SlidingWindow {
+
+    private final int bucketCount;
+    private final long bucketNanos;
+    private final AtomicLongArray epochs;
+    private final AtomicLongArray successes;
+    private final AtomicLongArray failures;
+
+    SlidingWindow(int bucketCount, long bucketNanos) {
+        this.bucketCount = bucketCount;
+        this.bucketNanos = bucketNanos;
+        this.epochs = new AtomicLongArray(bucketCount);
+        this.successes = new AtomicLongArray(bucketCount);
+        this.failures = new AtomicLongArray(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            epochs.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    void record(boolean failure, long nowNanos) {
+        long epoch = nowNanos / bucketNanos;
+        int index = (int) Math.abs(epoch % bucketCount);
+        long bucketEpoch = epochs.get(index);
+        if (bucketEpoch != epoch && epochs.compareAndSet(index, bucketEpoch, epoch)) {
+            successes.set(index, 0);
+            failures.set(index, 0);
+        }
+        if (failure) {
+            failures.incrementAndGet(index);
+        } else {
+            successes.incrementAndGet(index);
+        }
+    }
+
+    /**
+     * @return {successes, failures} recorded in window ending now.
+     */
+    long[] counts(long nowNanos) {
+        long epoch = nowNanos / bucketNanos;
+        long successCount = 0;
+        long failureCount = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            long bucketEpoch = epochs.get(i);
+            if (bucketEpoch > epoch - bucketCount && bucketEpoch <= epoch) {
+                successCount += successes.get(i);
+                failureCount += failures.get(i);
+            }
+        }
+        return new long[]{successCount, failureCount};
+    }
+
+    void reset() {
+        for (int i = 0; i < bucketCount; i++) {
+            epochs.set(i, Long.MIN_VALUE);
+            successes.set(i, 0);
+            failures.set(i, 0);
+        }
+    }
+}
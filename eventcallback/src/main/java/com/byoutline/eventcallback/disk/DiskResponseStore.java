@@ -0,0 +1,423 @@
+package com.byoutline.eventcallback.disk;
+
+import com.byoutline.eventcallback.CallInvoker;
+import com.byoutline.eventcallback.EventCallback;
+import com.byoutline.eventcallback.EventCallbackTemplate;
+import com.byoutline.eventcallback.util.WallClock;
+import org.apache.commons.lang3.Validate;
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Header;
+import retrofit.client.Response;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent store of successful results, so data can be shown after cold
+ * start without network call. Results are appended to memory mapped log file,
+ * and in memory index keeps only position of latest record of every key.
+ * On hit callback is created from template and its success is called
+ * synchronously with stored result, like in {@link com.byoutline.eventcallback.ResponseCache}.
+ * Results older than max age given to {@link #call} are fetched again.
+ * <p>
+ * Every record consists of key length, value length (or -1 for removed key),
+ * time of write, key and value. Key length is written last, so record interrupted by process
+ * death is ignored when log is loaded. Overwritten and removed records are
+ * dropped by compaction, that rewrites log when they take more than half of it.
+ * <p>
+ * Entries are not bound to session, since they have to survive restarts. Include
+ * user identity in keys, or call {@link #clear()} on logout.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class DiskResponseStore implements Closeable {
+
+    public static final int STORED_STATUS = 200;
+    private static final int HEADER_SIZE = 16;
+    private static final int REMOVED = -1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final int initialCapacity;
+    private final WallClock clock;
+    /**
+     * Offset of latest record of every key.
+     */
+    private final Map<String, Integer> index = new HashMap<String, Integer>();
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private int writePosition;
+    /**
+     * Bytes of records that were overwritten or removed.
+     */
+    private int garbageBytes;
+
+    /**
+     * Opens log file, creating it if needed, and loads its index.
+     *
+     * @param file            log file.
+     * @param initialCapacity initial size of mapped file in bytes. It is doubled
+     *                        when log does not fit.
+     */
+    public DiskResponseStore(@Nonnull File file, int initialCapacity) throws IOException {
+        this(file, initialCapacity, WallClock.SYSTEM);
+    }
+
+    /**
+     * @param clock provides time of write stored in records.
+     */
+    public DiskResponseStore(@Nonnull File file, int initialCapacity, @Nonnull WallClock clock) throws IOException {
+        Validate.isTrue(initialCapacity > HEADER_SIZE, "initialCapacity must be greater than %d: %d",
+                HEADER_SIZE, initialCapacity);
+        this.file = file;
+        this.initialCapacity = initialCapacity;
+        this.clock = Validate.notNull(clock);
+        open();
+        load();
+    }
+
+    private void open() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        long length = Math.max(raf.length(), initialCapacity);
+        Validate.isTrue(length <= Integer.MAX_VALUE, "Log file is too big: %d", length);
+        map((int) length);
+    }
+
+    private void map(int capacity) throws IOException {
+        raf.setLength(capacity);
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void load() {
+        int position = 0;
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int keyLength = buffer.getInt(position);
+            int valueLength = buffer.getInt(position + 4);
+            if (keyLength <= 0 || valueLength < REMOVED) {
+                break;
+            }
+            int recordSize = recordSize(keyLength, valueLength);
+            if (recordSize < 0 || position + recordSize > buffer.capacity()) {
+                break;
+            }
+            String key = readKey(position, keyLength);
+            dropPrevious(key);
+            if (valueLength == REMOVED) {
+                garbageBytes += recordSize;
+            } else {
+                index.put(key, position);
+            }
+            position += recordSize;
+        }
+        writePosition = position;
+    }
+
+    private static int recordSize(int keyLength, int valueLength) {
+        return HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+    }
+
+    private int recordSizeAt(int position) {
+        return recordSize(buffer.getInt(position), buffer.getInt(position + 4));
+    }
+
+    private String readKey(int position, int keyLength) {
+        byte[] key = new byte[keyLength];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + HEADER_SIZE);
+        view.get(key);
+        return new String(key, UTF8);
+    }
+
+    private void dropPrevious(String key) {
+        Integer previous = index.remove(key);
+        if (previous != null) {
+            garbageBytes += recordSizeAt(previous);
+        }
+    }
+
+    /**
+     * Replays stored result if there is one for given key that is not older
+     * than max age, otherwise starts call and stores its successful result.
+     *
+     * @param key      identity of request (for example endpoint and its arguments).
+     * @param template actions that should be executed for result.
+     * @param codec    converts result to stored bytes and back.
+     * @param maxAge   how long stored result can be replayed after it was written.
+     * @param unit     unit of maxAge.
+     * @param invoker  starts network call if nothing fresh is stored.
+     * @return true if result was read from disk.
+     */
+    public <S> boolean call(@Nonnull final String key, @Nonnull EventCallbackTemplate<S, ?> template,
+                            @Nonnull final ResultCodec<S> codec, long maxAge, @Nonnull TimeUnit unit,
+                            @Nonnull final CallInvoker<S> invoker) {
+        Validate.isTrue(maxAge >= 0, "maxAge cannot be negative: %d", maxAge);
+        S stored = isFresh(key, unit.toMillis(maxAge)) ? getOrNull(key, codec) : null;
+        EventCallback<S, ?> callback = template.newCallback();
+        if (stored != null) {
+            callback.replay(stored, storedResponse(key));
+            return true;
+        }
+        // started through callback, so retried attempts are stored too
+        callback.call(new CallInvoker<S>() {
+            @Override
+            public void invoke(Callback<S> callback) {
+                invoker.invoke(new StoringCallback<S>(key, codec, callback));
+            }
+        });
+        return false;
+    }
+
+    private static Response storedResponse(String key) {
+        return new Response("disk:" + key, STORED_STATUS, "Stored", Collections.<Header>emptyList(), null);
+    }
+
+    private synchronized boolean isFresh(String key, long maxAgeMillis) {
+        long storedMillis = storedMillis(key);
+        return storedMillis >= 0 && clock.currentTimeMillis() - storedMillis <= maxAgeMillis;
+    }
+
+    /**
+     * @return time when result for given key was written (as returned by
+     * {@link WallClock}), or -1 if nothing is stored.
+     */
+    public synchronized long storedMillis(@Nonnull String key) {
+        ensureOpen();
+        Integer position = index.get(key);
+        return position == null ? -1 : buffer.getLong(position + 8);
+    }
+
+    /**
+     * @return stored result, or null if there is none or it cannot be decoded.
+     * Records that cannot be decoded are removed.
+     */
+    @Nullable
+    private <S> S getOrNull(String key, ResultCodec<S> codec) {
+        try {
+            return get(key, codec);
+        } catch (IOException ex) {
+            try {
+                remove(key);
+            } catch (IOException ignored) {
+                // record will be skipped again on next read
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Decodes stored value directly from mapped file.
+     *
+     * @return stored result or null.
+     */
+    @Nullable
+    public synchronized <S> S get(@Nonnull String key, @Nonnull ResultCodec<S> codec) throws IOException {
+        ensureOpen();
+        Integer position = index.get(key);
+        if (position == null) {
+            return null;
+        }
+        int keyLength = buffer.getInt(position);
+        int valueLength = buffer.getInt(position + 4);
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.position(position + HEADER_SIZE + keyLength);
+        view.limit(position + HEADER_SIZE + keyLength + valueLength);
+        return codec.decode(view.slice());
+    }
+
+    public <S> void put(@Nonnull String key, @Nonnull S result, @Nonnull ResultCodec<S> codec) throws IOException {
+        byte[] value = codec.encode(result);
+        synchronized (this) {
+            append(key, value, value.length);
+        }
+    }
+
+    public synchronized void remove(@Nonnull String key) throws IOException {
+        if (index.containsKey(key)) {
+            append(key, null, REMOVED);
+        }
+    }
+
+    private void append(String key, @Nullable byte[] value, int valueLength) throws IOException {
+        ensureOpen();
+        byte[] keyBytes = key.getBytes(UTF8);
+        Validate.isTrue(keyBytes.length > 0, "Key cannot be empty");
+        int recordSize = recordSize(keyBytes.length, valueLength);
+        ensureCapacity(recordSize);
+        int position = writePosition;
+        buffer.putInt(position + 4, valueLength);
+        buffer.putLong(position + 8, clock.currentTimeMillis());
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + HEADER_SIZE);
+        view.put(keyBytes);
+        if (value != null) {
+            view.put(value);
+        }
+        int end = position + recordSize;
+        if (end + HEADER_SIZE <= buffer.capacity()) {
+            // bytes after end may remain from record interrupted before restart
+            buffer.putInt(end, 0);
+        }
+        buffer.putInt(position, keyBytes.length);
+        writePosition = end;
+
+        dropPrevious(key);
+        if (valueLength == REMOVED) {
+            garbageBytes += recordSize;
+        } else {
+            index.put(key, position);
+        }
+        if (garbageBytes >= initialCapacity / 2 && garbageBytes * 2 >= writePosition) {
+            compact();
+        }
+    }
+
+    private void ensureCapacity(int recordSize) throws IOException {
+        long needed = (long) writePosition + recordSize;
+        if (needed <= buffer.capacity()) {
+            return;
+        }
+        long capacity = buffer.capacity();
+        while (capacity < needed) {
+            capacity *= 2;
+        }
+        Validate.isTrue(capacity <= Integer.MAX_VALUE, "Log file would be too big: %d", capacity);
+        map((int) capacity);
+    }
+
+    /**
+     * Rewrites log so it contains only latest records of stored keys.
+     */
+    public synchronized void compact() throws IOException {
+        ensureOpen();
+        int liveBytes = writePosition - garbageBytes;
+        int capacity = initialCapacity;
+        while (capacity < liveBytes) {
+            capacity *= 2;
+        }
+        File compacted = new File(file.getPath() + ".compact");
+        RandomAccessFile compactedRaf = new RandomAccessFile(compacted, "rw");
+        Map<String, Integer> compactedIndex = new HashMap<String, Integer>(index.size() * 2);
+        int position = 0;
+        try {
+            compactedRaf.setLength(0);
+            compactedRaf.setLength(capacity);
+            MappedByteBuffer target = compactedRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            for (Map.Entry<String, Integer> entry : index.entrySet()) {
+                int source = entry.getValue();
+                int recordSize = recordSizeAt(source);
+                ByteBuffer record = buffer.duplicate();
+                record.position(source);
+                record.limit(source + recordSize);
+                target.position(position);
+                target.put(record);
+                compactedIndex.put(entry.getKey(), position);
+                position += recordSize;
+            }
+            target.force();
+        } finally {
+            compactedRaf.close();
+        }
+        raf.close();
+        if (!compacted.renameTo(file) && !(file.delete() && compacted.renameTo(file))) {
+            throw new IOException("Cannot replace " + file + " with compacted log");
+        }
+        index.clear();
+        index.putAll(compactedIndex);
+        writePosition = position;
+        garbageBytes = 0;
+        open();
+    }
+
+    /**
+     * Removes all stored results.
+     */
+    public synchronized void clear() throws IOException {
+        ensureOpen();
+        index.clear();
+        garbageBytes = writePosition;
+        compact();
+    }
+
+    /**
+     * Writes changes to storage device. Without it they are written when
+     * operating system decides to.
+     */
+    public synchronized void flush() {
+        ensureOpen();
+        buffer.force();
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return bytes taken by records, including ones that wait for compaction.
+     */
+    public synchronized int logSize() {
+        return writePosition;
+    }
+
+    private void ensureOpen() {
+        Validate.validState(raf != null, "Store is closed");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (raf == null) {
+            return;
+        }
+        buffer.force();
+        raf.close();
+        raf = null;
+        buffer = null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DiskResponseStore{" + "file=" + file + ", size=" + index.size() + ", logSize=" + writePosition
+                + ", garbageBytes=" + garbageBytes + '}';
+    }
+
+    private final class StoringCallback<S> implements Callback<S> {
+        private final String key;
+        private final ResultCodec<S> codec;
+        private final Callback<S> delegate;
+
+        StoringCallback(String key, ResultCodec<S> codec, Callback<S> delegate) {
+            this.key = key;
+            this.codec = codec;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void success(S result, Response response) {
+            if (result != null) {
+                try {
+                    put(key, result, codec);
+                } catch (IOException ignored) {
+                    // failing to store result must not hide it from callback
+                }
+            }
+            delegate.success(result, response);
+        }
+
+        @Override
+        public void failure(RetrofitError error) {
+            delegate.failure(error);
+        }
+    }
+}
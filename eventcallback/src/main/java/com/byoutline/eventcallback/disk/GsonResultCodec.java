@@ -0,0 +1,74 @@
+package com.byoutline.eventcallback.disk;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Stores results as UTF-8 JSON. Results are decoded straight from mapped file,
+ * without copying stored bytes to array first.
+ *
+ * @param <S> Type of stored result.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class GsonResultCodec<S> implements ResultCodec<S> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Gson gson;
+    private final TypeToken<S> type;
+
+    public GsonResultCodec(@Nonnull Gson gson, @Nonnull TypeToken<S> type) {
+        this.gson = gson;
+        this.type = type;
+    }
+
+    @Override
+    public byte[] encode(@Nonnull S result) {
+        return gson.toJson(result, type.getType()).getBytes(UTF8);
+    }
+
+    @Override
+    public S decode(@Nonnull ByteBuffer data) throws IOException {
+        try {
+            return gson.fromJson(new InputStreamReader(new ByteBufferInputStream(data), UTF8), type.getType());
+        } catch (JsonParseException ex) {
+            throw new IOException("Stored result cannot be parsed", ex);
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer data;
+
+        ByteBufferInputStream(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return data.hasRemaining() ? data.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!data.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, data.remaining());
+            data.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return data.remaining();
+        }
+    }
+}
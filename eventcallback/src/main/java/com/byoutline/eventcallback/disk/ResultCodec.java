@@ -0,0 +1,22 @@
+package com.byoutline.eventcallback.disk;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts results to bytes stored by {@link DiskResponseStore} and back.
+ *
+ * @param <S> Type of stored result.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface ResultCodec<S> {
+
+    byte[] encode(@Nonnull S result) throws IOException;
+
+    /**
+     * @param data read only view of stored bytes, backed directly by mapped
+     *             file. It must not be used after this method returns.
+     */
+    S decode(@Nonnull ByteBuffer data) throws IOException;
+}
@@ -1,74 +1,222 @@
 package com.byoutline.eventcallback.internal;
 
+import com.byoutline.eventcallback.BatchBus;
 import com.byoutline.eventcallback.IBus;
+import com.byoutline.eventcallback.LazyHeadersResponseEvent;
+import com.byoutline.eventcallback.Priority;
+import com.byoutline.eventcallback.PriorityBus;
 import com.byoutline.eventcallback.ResponseEvent;
+import com.byoutline.eventcallback.ResponseEventFactory;
+import com.byoutline.eventcallback.ResponseEventPool;
+import com.byoutline.eventcallback.ResponseHeaders;
 import com.byoutline.eventcallback.RetrofitResponseEvent;
+import com.byoutline.eventcallback.SynchronousBus;
 import com.byoutline.eventcallback.internal.actions.AtomicBooleanSetter;
-import com.byoutline.eventcallback.internal.actions.CreateEvents;
-import com.byoutline.eventcallback.internal.actions.ResultEvents;
-import com.byoutline.eventcallback.internal.actions.ScheduledActions;
+import com.byoutline.eventcallback.internal.actions.DispatchPlan;
+import com.byoutline.eventcallback.internal.actions.FlagGroupSetter;
+import com.byoutline.eventcallback.metrics.CallbackMetrics;
 import retrofit.client.Response;
 
+import javax.annotation.Nullable;
+
 /**
+ * Executes {@link DispatchPlan}s. Works only on precompiled arrays, so
+ * dispatching does not allocate (unless plan contains {@link ResponseEventFactory}s).
+ * If bus implements {@link BatchBus} precompiled arrays are passed to it directly.
+ * If bus implements {@link PriorityBus} every event is posted with its priority
+ * (even if bus is also a {@link BatchBus}).
+ * If {@link CallbackMetrics} are given, every bus call is timed.
+ * Pooled events are returned to {@link ResponseEventPool} only if bus is a
+ * {@link SynchronousBus}, so they are not cleared before delivery.
+ * <br />
+ * {@link LazyHeadersResponseEvent}s of single completion share one
+ * {@link ResponseHeaders} view, created only if any of them is posted.
+ *
  * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com> on 26.06.14.
  */
 public class EventPoster {
 
     private final IBus bus;
+    private final BatchBus batchBus;
+    private final PriorityBus priorityBus;
+    private final boolean releasesPooledEvents;
+    private final CallbackMetrics metrics;
+    private final String endpoint;
 
     public EventPoster(IBus bus) {
+        this(bus, null, CallbackMetrics.UNNAMED_ENDPOINT);
+    }
+
+    public EventPoster(IBus bus, @Nullable CallbackMetrics metrics, String endpoint) {
         this.bus = bus;
+        this.priorityBus = bus instanceof PriorityBus ? (PriorityBus) bus : null;
+        this.batchBus = bus instanceof BatchBus && priorityBus == null ? (BatchBus) bus : null;
+        this.releasesPooledEvents = bus instanceof SynchronousBus;
+        this.metrics = metrics;
+        this.endpoint = endpoint;
     }
 
-    public void executeCommonActions(ScheduledActions actions, boolean isSameSession) {
-        Iterable<AtomicBooleanSetter> boolsToSet = actions.boolsToSet;
-        setBools(boolsToSet);
+    public void executeCommonActions(DispatchPlan<?> plan, boolean isSameSession) {
+        setBools(plan.boolsToSet);
+        setFlags(plan.flagsToSet);
         if (isSameSession) {
-            postAll(actions.sessionOnlyEvents);
+            postAll(plan.sameSessionEvents, plan.sameSessionEventPriorities);
+        } else {
+            postAll(plan.crossSessionEvents, plan.crossSessionEventPriorities);
         }
-        postAll(actions.multiSessionEvents);
     }
 
-    public <R> void executeResponseActions(ScheduledActions<ResultEvents<R>> actions, R result, Response response,
+    public <R> void executeResponseActions(DispatchPlan<R> plan, R result, Response response,
                                            boolean sameSession, boolean postNullResponse) {
-        executeCommonActions(actions, sameSession);
+        executeCommonActions(plan, sameSession);
         if (result == null && !postNullResponse) {
             return;
         }
-        postResponseEvents(sameSession, postNullResponse, result, response, actions);
+        executeResponseEvents(plan, result, response, sameSession);
     }
 
-    private static void setBools(Iterable<AtomicBooleanSetter> boolsToSet) {
+    /**
+     * Posts only response events of plan, without setting bools or posting
+     * other events.
+     */
+    public <R> void executeResponseEvents(DispatchPlan<R> plan, R result, Response response, boolean sameSession) {
+        ResponseHeaders headers;
+        if (sameSession) {
+            headers = postResponseEvents(result, response, plan, plan.sameSessionResponseEvents,
+                    plan.sameSessionRetrofitEvents, plan.sameSessionResponseEventPriorities);
+            postNewResponseEvents(result, response, plan, headers, plan.sameSessionEventFactories,
+                    plan.sameSessionEventPools, plan.sameSessionEventFactoryPriorities);
+        } else {
+            headers = postResponseEvents(result, response, plan, plan.crossSessionResponseEvents,
+                    plan.crossSessionRetrofitEvents, plan.crossSessionResponseEventPriorities);
+            postNewResponseEvents(result, response, plan, headers, plan.crossSessionEventFactories,
+                    plan.crossSessionEventPools, plan.crossSessionEventFactoryPriorities);
+        }
+    }
+
+    private static void setBools(AtomicBooleanSetter[] boolsToSet) {
         for (AtomicBooleanSetter boolToSet : boolsToSet) {
             boolToSet.setRequestedValue();
         }
     }
 
-    private void postAll(CreateEvents events) {
-        postAll(events.events);
+    private static void setFlags(FlagGroupSetter[] flagsToSet) {
+        for (FlagGroupSetter flagToSet : flagsToSet) {
+            flagToSet.setRequestedValue();
+        }
     }
 
-    private void postAll(Iterable events) {
-        for (Object event : events) {
+    private void postAll(Object[] events, Priority[] priorities) {
+        if (events.length == 0) {
+            return;
+        }
+        if (batchBus != null) {
+            if (metrics == null) {
+                batchBus.postAll(events);
+            } else {
+                long start = System.nanoTime();
+                batchBus.postAll(events);
+                metrics.onBusPost(endpoint, events.length, System.nanoTime() - start);
+            }
+            return;
+        }
+        for (int i = 0; i < events.length; i++) {
+            post(events[i], priorities[i]);
+        }
+    }
+
+    private void post(Object event, Priority priority) {
+        if (metrics == null) {
+            postToBus(event, priority);
+            return;
+        }
+        long start = System.nanoTime();
+        postToBus(event, priority);
+        metrics.onBusPost(endpoint, 1, System.nanoTime() - start);
+    }
+
+    private void postToBus(Object event, Priority priority) {
+        if (priorityBus != null) {
+            priorityBus.post(event, priority);
+        } else {
             bus.post(event);
         }
     }
 
-    private <R> void postResponseEvents(boolean sameSession, boolean postNullResponse, R result, Response response, ScheduledActions<ResultEvents<R>> actions) {
-        if (sameSession) {
-            postResponseEvents(result, response, actions.sessionOnlyEvents.resultEvents);
+    /**
+     * @return headers view created for events, or null if none was needed.
+     */
+    private <R> ResponseHeaders postResponseEvents(R result, Response response, DispatchPlan<R> plan,
+                                                   ResponseEvent<R>[] events, RetrofitResponseEvent<R>[] retrofitEvents,
+                                                   Priority[] priorities) {
+        ResponseHeaders headers = null;
+        for (int i = 0; i < events.length; i++) {
+            events[i].setResponse(result);
+            RetrofitResponseEvent<R> retrofitEvent = retrofitEvents[i];
+            if (retrofitEvent != null) {
+                headers = setHeadersAndStatus(retrofitEvent, response, plan, headers);
+            }
         }
-        postResponseEvents(result, response, actions.multiSessionEvents.resultEvents);
+        postAll(events, priorities);
+        return headers;
     }
 
-    private <R> void postResponseEvents(R result, Response response, Iterable<ResponseEvent<R>> events) {
-        for (ResponseEvent<R> event : events) {
+    private <R> void postNewResponseEvents(R result, Response response, DispatchPlan<R> plan,
+                                           ResponseHeaders headers, ResponseEventFactory<R>[] factories,
+                                           ResponseEventPool<R>[] pools, Priority[] priorities) {
+        for (int i = 0; i < factories.length; i++) {
+            ResponseEvent<R> event = factories[i].create();
             event.setResponse(result);
-            if(event instanceof RetrofitResponseEvent) {
-                RetrofitResponseEvent retrofitEvent = (RetrofitResponseEvent) event;
-                retrofitEvent.setHeadersAndStatus(response.getHeaders(), response.getStatus());
+            if (event instanceof RetrofitResponseEvent) {
+                headers = setHeadersAndStatus((RetrofitResponseEvent<R>) event, response, plan, headers);
             }
-            bus.post(event);
+            postAndRelease(event, pools[i], priorities[i]);
+        }
+    }
+
+    /**
+     * Posts single event created by factory outside of {@link DispatchPlan},
+     * for example chunk of streamed response.
+     *
+     * @param headers view shared by events created for one response.
+     */
+    @SuppressWarnings("unchecked")
+    public <R> void postNewResponseEvent(R result, Response response, ResponseHeaders headers,
+                                         ResponseEventFactory<R> factory, Priority priority) {
+        ResponseEvent<R> event = factory.create();
+        event.setResponse(result);
+        if (event instanceof LazyHeadersResponseEvent) {
+            ((LazyHeadersResponseEvent<R>) event).setHeadersAndStatus(headers, response.getStatus());
+        } else if (event instanceof RetrofitResponseEvent) {
+            ((RetrofitResponseEvent<R>) event).setHeadersAndStatus(response.getHeaders(), response.getStatus());
+        }
+        ResponseEventPool<R> pool = factory instanceof ResponseEventPool ? (ResponseEventPool<R>) factory : null;
+        postAndRelease(event, pool, priority);
+    }
+
+    private <R> void postAndRelease(ResponseEvent<R> event, @Nullable ResponseEventPool<R> pool, Priority priority) {
+        post(event, priority);
+        if (releasesPooledEvents && pool != null) {
+            pool.release(event);
+        }
+    }
+
+    /**
+     * Passes headers view to {@link LazyHeadersResponseEvent}s, creating it on
+     * first use, and header list to other events.
+     *
+     * @return headers view shared by events of current completion, or null.
+     */
+    private static ResponseHeaders setHeadersAndStatus(RetrofitResponseEvent<?> event, Response response,
+                                                       DispatchPlan<?> plan, @Nullable ResponseHeaders headers) {
+        if (!(event instanceof LazyHeadersResponseEvent)) {
+            event.setHeadersAndStatus(response.getHeaders(), response.getStatus());
+            return headers;
+        }
+        if (headers == null) {
+            headers = new ResponseHeaders(response.getHeaders(), plan.indexedHeaderNames);
         }
+        ((LazyHeadersResponseEvent<?>) event).setHeadersAndStatus(headers, response.getStatus());
+        return headers;
     }
 }
@@ -2,6 +2,8 @@ package com.byoutline.eventcallback.internal;
 
 import com.google.gson.reflect.TypeToken;
 import retrofit.RetrofitError;
+import retrofit.client.Response;
+import retrofit.mime.TypedInput;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -22,15 +24,31 @@ public final class RetrofitErrorConverter {
         return (E) error.getBodyAs(typeToken.getType());
     }
 
+    /**
+     * Converts error body, or returns null if there is nothing to convert or
+     * conversion fails. Errors without body are recognized before calling
+     * converter, so they do not throw.
+     */
     public static <E> E getAsClassOrNull(TypeToken<E> typeToken, RetrofitError error) throws RuntimeException {
-        if (error.isNetworkError()) {
+        if (error.isNetworkError() || !hasBody(error.getResponse())) {
             return null;
         }
         try {
             return getAsClassOrFail(typeToken, error);
         } catch (RuntimeException ex) {
-            LOGGER.log(Level.FINE, "Could not parse: " + error, ex);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Could not parse: " + error, ex);
+            }
         }
         return null;
     }
+
+    private static boolean hasBody(Response response) {
+        if (response == null) {
+            return false;
+        }
+        TypedInput body = response.getBody();
+        // length is -1 if it is unknown
+        return body != null && body.length() != 0;
+    }
 }
@@ -0,0 +1,84 @@
+package com.byoutline.eventcallback.internal;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executes tasks one at a time, in submission order, using given executor.
+ * Allows sharing one (possibly parallel) executor between many callbacks
+ * while keeping order of completions of each callback.
+ * <p>
+ * If executor rejects task (for example because it was shut down) task is
+ * run on thread that submitted it, so completion is never lost.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class SerialExecutor implements Executor {
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+    private Runnable active;
+
+    public SerialExecutor(@Nonnull Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(@Nonnull final Runnable task) {
+        Runnable rejected;
+        synchronized (this) {
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                }
+            });
+            if (active != null) {
+                return;
+            }
+            rejected = pollAndExecute();
+        }
+        runRejected(rejected);
+    }
+
+    private void scheduleNext() {
+        Runnable rejected;
+        synchronized (this) {
+            rejected = pollAndExecute();
+        }
+        runRejected(rejected);
+    }
+
+    /**
+     * @return task rejected by executor, that has to be run by caller outside
+     * of lock, or null.
+     */
+    @Nullable
+    private Runnable pollAndExecute() {
+        active = tasks.poll();
+        if (active == null) {
+            return null;
+        }
+        try {
+            executor.execute(active);
+            return null;
+        } catch (RejectedExecutionException ex) {
+            // task stays active, so later tasks wait until it runs here
+            return active;
+        }
+    }
+
+    private static void runRejected(@Nullable Runnable rejected) {
+        if (rejected != null) {
+            rejected.run();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.byoutline.eventcallback.internal;
+
+import com.byoutline.eventcallback.SuccessHandler;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Memoizes which shared {@link SuccessHandler}s match given response class, so
+ * {@link Class#isAssignableFrom(Class)} is checked only on first response of
+ * each class. Instance is bound to single handlers map, to invalidate create
+ * new one.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class SuccessHandlerResolver {
+
+    private static final SuccessHandler[] NO_HANDLERS = new SuccessHandler[0];
+
+    private final Map<Class, SuccessHandler> handlers;
+    private final ConcurrentMap<Class, SuccessHandler[]> resolved = new ConcurrentHashMap<Class, SuccessHandler[]>();
+
+    public SuccessHandlerResolver(@Nonnull Map<Class, SuccessHandler> handlers) {
+        this.handlers = handlers;
+    }
+
+    /**
+     * @return handlers registered for given class or any of its supertypes, in
+     * handlers map iteration order.
+     */
+    public SuccessHandler[] handlersFor(@Nonnull Class resultClass) {
+        SuccessHandler[] result = resolved.get(resultClass);
+        if (result == null) {
+            result = resolve(resultClass);
+            resolved.putIfAbsent(resultClass, result);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private SuccessHandler[] resolve(Class resultClass) {
+        List<SuccessHandler> matching = new ArrayList<SuccessHandler>();
+        for (Map.Entry<Class, SuccessHandler> handler : handlers.entrySet()) {
+            if (handler.getKey().isAssignableFrom(resultClass)) {
+                matching.add(handler.getValue());
+            }
+        }
+        return matching.isEmpty() ? NO_HANDLERS : matching.toArray(new SuccessHandler[matching.size()]);
+    }
+}
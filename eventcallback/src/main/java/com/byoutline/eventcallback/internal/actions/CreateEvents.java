@@ -1,10 +1,12 @@
 package com.byoutline.eventcallback.internal.actions;
 
 import com.byoutline.eventcallback.EventCallback;
+import com.byoutline.eventcallback.Priority;
 import org.apache.commons.lang3.Validate;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -14,6 +16,11 @@ import java.util.List;
  */
 public class CreateEvents {
     public final List events;
+    /**
+     * Priorities of {@link #events}, at the same positions. Events without
+     * priority are {@link Priority#NORMAL}.
+     */
+    public final List<Priority> eventPriorities;
 
     public CreateEvents() {
         this(new ArrayList<Object>());
@@ -21,6 +28,7 @@ public class CreateEvents {
 
     public CreateEvents(@Nonnull List events) {
         this.events = events;
+        this.eventPriorities = new ArrayList<Priority>(Collections.nCopies(events.size(), Priority.NORMAL));
     }
 
     void validate() {
@@ -0,0 +1,355 @@
+package com.byoutline.eventcallback.internal.actions;
+
+import com.byoutline.eventcallback.EventCallback;
+import com.byoutline.eventcallback.LazyHeadersResponseEvent;
+import com.byoutline.eventcallback.LazyHeadersResponseEventFactory;
+import com.byoutline.eventcallback.Priority;
+import com.byoutline.eventcallback.ResponseEvent;
+import com.byoutline.eventcallback.ResponseEventFactory;
+import com.byoutline.eventcallback.ResponseEventPool;
+import com.byoutline.eventcallback.ResponseHeaders;
+import com.byoutline.eventcallback.RetrofitResponseEvent;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Frozen, array backed form of {@link ScheduledActions}. Created once when
+ * {@link EventCallback} is built, so dispatching response does not have to
+ * walk builder lists or check event types.
+ * <p>
+ * Events are stored twice: once for same session (session only events followed
+ * by multi session events) and once for different session (multi session
+ * events only), so each dispatch is a single array walk.
+ * <br />
+ * Response events keep their registration order. Every response event array has
+ * a parallel array, that holds the same event cast to {@link RetrofitResponseEvent}
+ * or null for plain {@link ResponseEvent}s. Similarly every array of
+ * {@link ResponseEventFactory}s has a parallel array of {@link ResponseEventPool}s.
+ * <br />
+ * Within every array events are stably sorted by {@link Priority}, and each
+ * array has parallel array of priorities.
+ * <br />
+ * Names of headers needed by {@link LazyHeadersResponseEvent}s and declared by
+ * {@link LazyHeadersResponseEventFactory}s are collected, so {@link ResponseHeaders}
+ * created for completion index only them.
+ * <br />
+ * {@link FlagGroupSetter}s are merged, so every {@link com.byoutline.eventcallback.FlagGroup}
+ * is updated once per dispatch.
+ *
+ * @param <R> Type of response passed to response events.
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class DispatchPlan<R> {
+
+    private static final Object[] NO_EVENTS = new Object[0];
+    private static final ResponseEvent[] NO_RESPONSE_EVENTS = new ResponseEvent[0];
+    private static final RetrofitResponseEvent[] NO_RETROFIT_EVENTS = new RetrofitResponseEvent[0];
+    private static final ResponseEventFactory[] NO_FACTORIES = new ResponseEventFactory[0];
+    private static final ResponseEventPool[] NO_POOLS = new ResponseEventPool[0];
+    private static final Priority[] NO_PRIORITIES = new Priority[0];
+    private static final Comparator<Entry<?>> BY_PRIORITY = new Comparator<Entry<?>>() {
+        @Override
+        public int compare(Entry<?> lhs, Entry<?> rhs) {
+            return lhs.priority.compareTo(rhs.priority);
+        }
+    };
+
+    public final AtomicBooleanSetter[] boolsToSet;
+    public final FlagGroupSetter[] flagsToSet;
+    public final Object[] sameSessionEvents;
+    public final Object[] crossSessionEvents;
+    public final ResponseEvent<R>[] sameSessionResponseEvents;
+    public final RetrofitResponseEvent<R>[] sameSessionRetrofitEvents;
+    public final ResponseEvent<R>[] crossSessionResponseEvents;
+    public final RetrofitResponseEvent<R>[] crossSessionRetrofitEvents;
+    public final ResponseEventFactory<R>[] sameSessionEventFactories;
+    public final ResponseEventPool<R>[] sameSessionEventPools;
+    public final ResponseEventFactory<R>[] crossSessionEventFactories;
+    public final ResponseEventPool<R>[] crossSessionEventPools;
+    public final Priority[] sameSessionEventPriorities;
+    public final Priority[] crossSessionEventPriorities;
+    public final Priority[] sameSessionResponseEventPriorities;
+    public final Priority[] crossSessionResponseEventPriorities;
+    public final Priority[] sameSessionEventFactoryPriorities;
+    public final Priority[] crossSessionEventFactoryPriorities;
+    /**
+     * Lower case names of headers needed by response events, or null if any
+     * header may be needed.
+     */
+    public final Set<String> indexedHeaderNames;
+
+    private DispatchPlan(@Nonnull List<AtomicBooleanSetter> boolsToSet, @Nonnull List<FlagGroupSetter> flagsToSet,
+                         @Nonnull CreateEvents sessionOnlyEvents, @Nonnull CreateEvents multiSessionEvents,
+                         @Nonnull ResultEvents<R> sessionOnlyResultEvents,
+                         @Nonnull ResultEvents<R> multiSessionResultEvents) {
+        this.boolsToSet = boolsToSet.toArray(new AtomicBooleanSetter[boolsToSet.size()]);
+        this.flagsToSet = FlagGroupSetter.merge(flagsToSet);
+        List<Entry<Object>> sameSessionEvents = concatSorted(events(sessionOnlyEvents), sessionOnlyEvents.eventPriorities,
+                events(multiSessionEvents), multiSessionEvents.eventPriorities);
+        List<Entry<Object>> crossSessionEvents = concatSorted(Collections.emptyList(), Collections.<Priority>emptyList(),
+                events(multiSessionEvents), multiSessionEvents.eventPriorities);
+        List<Entry<ResponseEvent<R>>> sameSessionResponseEvents = concatSorted(
+                sessionOnlyResultEvents.resultEvents, sessionOnlyResultEvents.resultEventPriorities,
+                multiSessionResultEvents.resultEvents, multiSessionResultEvents.resultEventPriorities);
+        List<Entry<ResponseEvent<R>>> crossSessionResponseEvents = concatSorted(
+                Collections.<ResponseEvent<R>>emptyList(), Collections.<Priority>emptyList(),
+                multiSessionResultEvents.resultEvents, multiSessionResultEvents.resultEventPriorities);
+        List<Entry<ResponseEventFactory<R>>> sameSessionEventFactories = concatSorted(
+                sessionOnlyResultEvents.resultEventFactories, sessionOnlyResultEvents.resultEventFactoryPriorities,
+                multiSessionResultEvents.resultEventFactories, multiSessionResultEvents.resultEventFactoryPriorities);
+        List<Entry<ResponseEventFactory<R>>> crossSessionEventFactories = concatSorted(
+                Collections.<ResponseEventFactory<R>>emptyList(), Collections.<Priority>emptyList(),
+                multiSessionResultEvents.resultEventFactories, multiSessionResultEvents.resultEventFactoryPriorities);
+
+        this.sameSessionEvents = items(sameSessionEvents, NO_EVENTS);
+        this.crossSessionEvents = items(crossSessionEvents, NO_EVENTS);
+        this.sameSessionResponseEvents = items(sameSessionResponseEvents, DispatchPlan.<R>noResponseEvents());
+        this.sameSessionRetrofitEvents = retrofitEvents(this.sameSessionResponseEvents);
+        this.crossSessionResponseEvents = items(crossSessionResponseEvents, DispatchPlan.<R>noResponseEvents());
+        this.crossSessionRetrofitEvents = retrofitEvents(this.crossSessionResponseEvents);
+        this.sameSessionEventFactories = items(sameSessionEventFactories, DispatchPlan.<R>noFactories());
+        this.sameSessionEventPools = eventPools(this.sameSessionEventFactories);
+        this.crossSessionEventFactories = items(crossSessionEventFactories, DispatchPlan.<R>noFactories());
+        this.crossSessionEventPools = eventPools(this.crossSessionEventFactories);
+        this.sameSessionEventPriorities = priorities(sameSessionEvents);
+        this.crossSessionEventPriorities = priorities(crossSessionEvents);
+        this.sameSessionResponseEventPriorities = priorities(sameSessionResponseEvents);
+        this.crossSessionResponseEventPriorities = priorities(crossSessionResponseEvents);
+        this.sameSessionEventFactoryPriorities = priorities(sameSessionEventFactories);
+        this.crossSessionEventFactoryPriorities = priorities(crossSessionEventFactories);
+        this.indexedHeaderNames = indexedHeaderNames(this.sameSessionResponseEvents, this.sameSessionEventFactories);
+    }
+
+    private DispatchPlan(DispatchPlan<R> plan) {
+        this.boolsToSet = plan.boolsToSet;
+        this.flagsToSet = plan.flagsToSet;
+        this.sameSessionEvents = plan.crossSessionEvents;
+        this.crossSessionEvents = plan.crossSessionEvents;
+        this.sameSessionResponseEvents = plan.crossSessionResponseEvents;
+        this.sameSessionRetrofitEvents = plan.crossSessionRetrofitEvents;
+        this.crossSessionResponseEvents = plan.crossSessionResponseEvents;
+        this.crossSessionRetrofitEvents = plan.crossSessionRetrofitEvents;
+        this.sameSessionEventFactories = plan.crossSessionEventFactories;
+        this.sameSessionEventPools = plan.crossSessionEventPools;
+        this.crossSessionEventFactories = plan.crossSessionEventFactories;
+        this.crossSessionEventPools = plan.crossSessionEventPools;
+        this.sameSessionEventPriorities = plan.crossSessionEventPriorities;
+        this.crossSessionEventPriorities = plan.crossSessionEventPriorities;
+        this.sameSessionResponseEventPriorities = plan.crossSessionResponseEventPriorities;
+        this.crossSessionResponseEventPriorities = plan.crossSessionResponseEventPriorities;
+        this.sameSessionEventFactoryPriorities = plan.crossSessionEventFactoryPriorities;
+        this.crossSessionEventFactoryPriorities = plan.crossSessionEventFactoryPriorities;
+        this.indexedHeaderNames = plan.indexedHeaderNames;
+    }
+
+    /**
+     * Compiles actions that do not post response events (onCreate and status codes).
+     */
+    public static <R> DispatchPlan<R> ofCreateActions(@Nonnull ScheduledActions<CreateEvents> actions) {
+        return new DispatchPlan<R>(actions.boolsToSet, actions.flagsToSet,
+                actions.sessionOnlyEvents, actions.multiSessionEvents,
+                new ResultEvents<R>(), new ResultEvents<R>());
+    }
+
+    /**
+     * Compiles actions that may post response events (onSuccess and onError).
+     */
+    public static <R> DispatchPlan<R> ofResultActions(@Nonnull ScheduledActions<ResultEvents<R>> actions) {
+        return new DispatchPlan<R>(actions.boolsToSet, actions.flagsToSet,
+                actions.sessionOnlyEvents, actions.multiSessionEvents,
+                actions.sessionOnlyEvents, actions.multiSessionEvents);
+    }
+
+    /**
+     * {@link CreateEvents} keeps events in raw list, but they are only read
+     * as objects, so the cast is safe.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Object> events(CreateEvents createEvents) {
+        return (List<Object>) createEvents.events;
+    }
+
+    /**
+     * @return registrations of both lists, stably sorted by priority.
+     */
+    private static <T> List<Entry<T>> concatSorted(List<? extends T> first, List<Priority> firstPriorities,
+                                                   List<? extends T> second, List<Priority> secondPriorities) {
+        List<Entry<T>> result = new ArrayList<Entry<T>>(first.size() + second.size());
+        boolean prioritized = addEntries(result, first, firstPriorities);
+        prioritized |= addEntries(result, second, secondPriorities);
+        if (prioritized) {
+            // merge sort used by Collections.sort is stable
+            Collections.sort(result, BY_PRIORITY);
+        }
+        return result;
+    }
+
+    /**
+     * @return true if any added entry has other than {@link Priority#NORMAL} priority.
+     */
+    private static <T> boolean addEntries(List<Entry<T>> result, List<? extends T> items, List<Priority> priorities) {
+        boolean prioritized = false;
+        for (int i = 0; i < items.size(); i++) {
+            Priority priority = i < priorities.size() ? priorities.get(i) : Priority.NORMAL;
+            prioritized |= priority != Priority.NORMAL;
+            result.add(new Entry<T>(items.get(i), priority));
+        }
+        return prioritized;
+    }
+
+    private static <T> T[] items(List<Entry<T>> entries, T[] empty) {
+        if (entries.isEmpty()) {
+            return empty;
+        }
+        T[] result = Arrays.copyOf(empty, entries.size());
+        for (int i = 0; i < result.length; i++) {
+            result[i] = entries.get(i).item;
+        }
+        return result;
+    }
+
+    private static Priority[] priorities(List<? extends Entry<?>> entries) {
+        if (entries.isEmpty()) {
+            return NO_PRIORITIES;
+        }
+        Priority[] result = new Priority[entries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = entries.get(i).priority;
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> ResponseEvent<R>[] noResponseEvents() {
+        return NO_RESPONSE_EVENTS;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> ResponseEventFactory<R>[] noFactories() {
+        return NO_FACTORIES;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> RetrofitResponseEvent<R>[] retrofitEvents(ResponseEvent<R>[] events) {
+        if (events.length == 0) {
+            return NO_RETROFIT_EVENTS;
+        }
+        RetrofitResponseEvent<R>[] result = new RetrofitResponseEvent[events.length];
+        for (int i = 0; i < events.length; i++) {
+            if (events[i] instanceof RetrofitResponseEvent) {
+                result[i] = (RetrofitResponseEvent<R>) events[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return union of headers needed by events and events created by
+     * factories, or null if at least one of them may need any header.
+     */
+    private static Set<String> indexedHeaderNames(ResponseEvent<?>[] events, ResponseEventFactory<?>[] factories) {
+        Set<String> result = new HashSet<String>();
+        for (ResponseEvent<?> event : events) {
+            if (event instanceof LazyHeadersResponseEvent
+                    && !addNames(result, ((LazyHeadersResponseEvent<?>) event).neededHeaders())) {
+                return null;
+            }
+        }
+        for (ResponseEventFactory<?> factory : factories) {
+            // factory that does not declare headers may create event that reads any of them
+            if (!(factory instanceof LazyHeadersResponseEventFactory)
+                    || !addNames(result, ((LazyHeadersResponseEventFactory<?>) factory).neededHeaders())) {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return false if any header may be needed.
+     */
+    private static boolean addNames(Set<String> result, @Nullable String[] needed) {
+        if (needed == null) {
+            return false;
+        }
+        for (String name : needed) {
+            result.add(name.toLowerCase(Locale.US));
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> ResponseEventPool<R>[] eventPools(ResponseEventFactory<R>[] factories) {
+        if (factories.length == 0) {
+            return NO_POOLS;
+        }
+        ResponseEventPool<R>[] result = new ResponseEventPool[factories.length];
+        for (int i = 0; i < factories.length; i++) {
+            if (factories[i] instanceof ResponseEventPool) {
+                result[i] = (ResponseEventPool<R>) factories[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return plan that executes the same actions regardless of session state,
+     * and does not reference session only events.
+     */
+    public DispatchPlan<R> crossSessionOnly() {
+        return new DispatchPlan<R>(this);
+    }
+
+    /**
+     * @return true if response events will be posted for given session state.
+     */
+    public boolean hasResponseEvents(boolean sameSession) {
+        if (sameSession) {
+            return sameSessionResponseEvents.length + sameSessionEventFactories.length > 0;
+        }
+        return crossSessionResponseEvents.length + crossSessionEventFactories.length > 0;
+    }
+
+    public void validate() {
+        Validate.noNullElements(boolsToSet);
+        Validate.noNullElements(flagsToSet);
+        Validate.noNullElements(sameSessionEvents);
+        Validate.noNullElements(sameSessionResponseEvents);
+        Validate.noNullElements(sameSessionEventFactories);
+    }
+
+    @Override
+    public String toString() {
+        return "DispatchPlan{" + "boolsToSet=" + Arrays.toString(boolsToSet)
+                + ", flagsToSet=" + Arrays.toString(flagsToSet)
+                + ", sameSessionEvents=" + Arrays.toString(sameSessionEvents)
+                + ", crossSessionEvents=" + Arrays.toString(crossSessionEvents)
+                + ", sameSessionResponseEvents=" + Arrays.toString(sameSessionResponseEvents)
+                + ", crossSessionResponseEvents=" + Arrays.toString(crossSessionResponseEvents)
+                + ", sameSessionEventFactories=" + Arrays.toString(sameSessionEventFactories)
+                + ", crossSessionEventFactories=" + Arrays.toString(crossSessionEventFactories) + '}';
+    }
+
+    /**
+     * Single registration of event with its priority.
+     */
+    private static final class Entry<T> {
+        final T item;
+        final Priority priority;
+
+        Entry(T item, Priority priority) {
+            this.item = item;
+            this.priority = priority;
+        }
+    }
+}
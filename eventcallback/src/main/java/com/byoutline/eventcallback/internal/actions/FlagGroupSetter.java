@@ -0,0 +1,66 @@
+package com.byoutline.eventcallback.internal.actions;
+
+import com.byoutline.eventcallback.FlagGroup;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sets and clears flags of passed {@link FlagGroup} with single update.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public class FlagGroupSetter {
+    public final FlagGroup group;
+    public final int setMask;
+    public final int clearMask;
+
+    public FlagGroupSetter(@Nonnull FlagGroup group, int setMask, int clearMask) {
+        this.group = group;
+        this.setMask = setMask;
+        this.clearMask = clearMask;
+    }
+
+    public static FlagGroupSetter ofValue(@Nonnull FlagGroup group, int mask, boolean requestedValue) {
+        return requestedValue ? new FlagGroupSetter(group, mask, 0) : new FlagGroupSetter(group, 0, mask);
+    }
+
+    /**
+     * Combines setters of the same group into one, so each group is updated
+     * once. Later setters override flags of earlier ones.
+     *
+     * @return one setter per group, in order of first occurrence of group.
+     */
+    public static FlagGroupSetter[] merge(@Nonnull List<FlagGroupSetter> setters) {
+        Map<FlagGroup, FlagGroupSetter> merged = new IdentityHashMap<FlagGroup, FlagGroupSetter>();
+        List<FlagGroup> order = new ArrayList<FlagGroup>();
+        for (FlagGroupSetter setter : setters) {
+            FlagGroupSetter previous = merged.get(setter.group);
+            if (previous == null) {
+                order.add(setter.group);
+                merged.put(setter.group, setter);
+            } else {
+                int setMask = (previous.setMask & ~setter.clearMask) | setter.setMask;
+                int clearMask = (previous.clearMask & ~setter.setMask) | setter.clearMask;
+                merged.put(setter.group, new FlagGroupSetter(setter.group, setMask, clearMask));
+            }
+        }
+        FlagGroupSetter[] result = new FlagGroupSetter[order.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = merged.get(order.get(i));
+        }
+        return result;
+    }
+
+    public void setRequestedValue() {
+        group.update(setMask, clearMask);
+    }
+
+    @Override
+    public String toString() {
+        return "FlagGroupSetter{" + "group=" + group + ", setMask=" + setMask + ", clearMask=" + clearMask + '}';
+    }
+}
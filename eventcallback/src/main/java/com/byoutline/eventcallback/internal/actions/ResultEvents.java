@@ -1,7 +1,9 @@
 package com.byoutline.eventcallback.internal.actions;
 
 import com.byoutline.eventcallback.EventCallback;
+import com.byoutline.eventcallback.Priority;
 import com.byoutline.eventcallback.ResponseEvent;
+import com.byoutline.eventcallback.ResponseEventFactory;
 import org.apache.commons.lang3.Validate;
 
 import java.util.ArrayList;
@@ -15,19 +17,32 @@ import java.util.List;
  */
 public class ResultEvents<R> extends CreateEvents {
     public final List<ResponseEvent<R>> resultEvents;
+    public final List<ResponseEventFactory<R>> resultEventFactories;
+    /**
+     * Priorities of {@link #resultEvents}, at the same positions.
+     */
+    public final List<Priority> resultEventPriorities;
+    /**
+     * Priorities of {@link #resultEventFactories}, at the same positions.
+     */
+    public final List<Priority> resultEventFactoryPriorities;
 
     public ResultEvents() {
         this.resultEvents = new ArrayList<ResponseEvent<R>>();
+        this.resultEventFactories = new ArrayList<ResponseEventFactory<R>>();
+        this.resultEventPriorities = new ArrayList<Priority>();
+        this.resultEventFactoryPriorities = new ArrayList<Priority>();
     }
 
     @Override
     void validate() {
         super.validate();
         Validate.noNullElements(resultEvents);
+        Validate.noNullElements(resultEventFactories);
     }
 
     @Override
     public String toString() {
-        return "ResultEvents{" + "resultEvents=" + resultEvents + '}' + super.toString();
+        return "ResultEvents{" + "resultEvents=" + resultEvents + ", resultEventFactories=" + resultEventFactories + '}' + super.toString();
     }
 }
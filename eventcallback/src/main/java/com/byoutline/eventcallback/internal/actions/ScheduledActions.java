@@ -4,6 +4,7 @@ import com.byoutline.eventcallback.EventCallback;
 import org.apache.commons.lang3.Validate;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -17,6 +18,7 @@ public class ScheduledActions<T extends CreateEvents> {
     public final T sessionOnlyEvents;
     public final T multiSessionEvents;
     public final List<AtomicBooleanSetter> boolsToSet;
+    public final List<FlagGroupSetter> flagsToSet = new ArrayList<FlagGroupSetter>();
 
     public ScheduledActions(@Nonnull T sessionOnlyEvents, @Nonnull T multiSessionEvents, @Nonnull List<AtomicBooleanSetter> boolsToSet) {
         this.sessionOnlyEvents = sessionOnlyEvents;
@@ -28,10 +30,11 @@ public class ScheduledActions<T extends CreateEvents> {
         sessionOnlyEvents.validate();
         multiSessionEvents.validate();
         Validate.noNullElements(boolsToSet);
+        Validate.noNullElements(flagsToSet);
     }
 
     @Override
     public String toString() {
-        return "ScheduledActions{" + "sessionOnlyEvents=" + sessionOnlyEvents + ", multiSessionEvents=" + multiSessionEvents + ", boolsToSet=" + boolsToSet + '}';
+        return "ScheduledActions{" + "sessionOnlyEvents=" + sessionOnlyEvents + ", multiSessionEvents=" + multiSessionEvents + ", boolsToSet=" + boolsToSet + ", flagsToSet=" + flagsToSet + '}';
     }
 }
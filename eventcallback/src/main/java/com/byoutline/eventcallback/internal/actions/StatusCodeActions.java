@@ -0,0 +1,132 @@
+package com.byoutline.eventcallback.internal.actions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Lookup table of {@link DispatchPlan}s indexed by HTTP status code. Registered
+ * codes are kept in sorted array and found with binary search, so checking
+ * response status does not box or hash it, and table takes space only for
+ * registered codes. Additionally stores plans for whole status class (like any 5xx).
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class StatusCodeActions {
+
+    public static final int MIN_STATUS_CLASS = 1;
+    public static final int MAX_STATUS_CLASS = 5;
+
+    private static final int MIN_CODE = MIN_STATUS_CLASS * 100;
+    private static final int MAX_CODE = MAX_STATUS_CLASS * 100 + 99;
+
+    /**
+     * Registered status codes in ascending order.
+     */
+    private final int[] codes;
+    /**
+     * Plans of {@link #codes}, at the same positions.
+     */
+    private final DispatchPlan<Object>[] byCode;
+    private final DispatchPlan<Object>[] byStatusClass;
+
+    @SuppressWarnings("unchecked")
+    private StatusCodeActions(Map<Integer, ScheduledActions<CreateEvents>> codeActions,
+                              Map<Integer, ScheduledActions<CreateEvents>> statusClassActions) {
+        this.codes = new int[codeActions.size()];
+        this.byCode = new DispatchPlan[codeActions.size()];
+        this.byStatusClass = new DispatchPlan[statusClassActions.isEmpty() ? 0 : MAX_STATUS_CLASS + 1];
+        int i = 0;
+        for (Integer code : new TreeSet<Integer>(codeActions.keySet())) {
+            codes[i] = code;
+            byCode[i] = DispatchPlan.ofCreateActions(codeActions.get(code));
+            i++;
+        }
+        for (Map.Entry<Integer, ScheduledActions<CreateEvents>> entry : statusClassActions.entrySet()) {
+            byStatusClass[entry.getKey()] = DispatchPlan.ofCreateActions(entry.getValue());
+        }
+    }
+
+    private StatusCodeActions(int[] codes, DispatchPlan<Object>[] byCode, DispatchPlan<Object>[] byStatusClass) {
+        this.codes = codes;
+        this.byCode = byCode;
+        this.byStatusClass = byStatusClass;
+    }
+
+    /**
+     * @param codeActions        actions for single status codes.
+     * @param statusClassActions actions for status classes, keyed by first digit of status code.
+     */
+    public static StatusCodeActions compile(@Nonnull Map<Integer, ScheduledActions<CreateEvents>> codeActions,
+                                            @Nonnull Map<Integer, ScheduledActions<CreateEvents>> statusClassActions) {
+        return new StatusCodeActions(codeActions, statusClassActions);
+    }
+
+    /**
+     * @return actions registered for exactly this status code or null.
+     */
+    @Nullable
+    public DispatchPlan<Object> forStatusCode(int statusCode) {
+        if (codes.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(codes, statusCode);
+        return index < 0 ? null : byCode[index];
+    }
+
+    /**
+     * @return actions registered for status class of this status code or null.
+     */
+    @Nullable
+    public DispatchPlan<Object> forStatusClass(int statusCode) {
+        if (byStatusClass.length == 0 || statusCode < MIN_CODE || statusCode > MAX_CODE) {
+            return null;
+        }
+        return byStatusClass[statusCode / 100];
+    }
+
+    /**
+     * @return actions in which every plan is replaced by {@link DispatchPlan#crossSessionOnly()}.
+     */
+    public StatusCodeActions crossSessionOnly() {
+        return new StatusCodeActions(codes, crossSessionOnly(byCode), crossSessionOnly(byStatusClass));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static DispatchPlan<Object>[] crossSessionOnly(DispatchPlan<Object>[] plans) {
+        DispatchPlan<Object>[] result = new DispatchPlan[plans.length];
+        for (int i = 0; i < plans.length; i++) {
+            result[i] = plans[i] == null ? null : plans[i].crossSessionOnly();
+        }
+        return result;
+    }
+
+    public void validate() {
+        for (DispatchPlan<Object> plan : byCode) {
+            if (plan != null) {
+                plan.validate();
+            }
+        }
+        for (DispatchPlan<Object> plan : byStatusClass) {
+            if (plan != null) {
+                plan.validate();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("StatusCodeActions{");
+        for (int i = 0; i < byCode.length; i++) {
+            sb.append(codes[i]).append('=').append(byCode[i]).append(", ");
+        }
+        for (int i = 0; i < byStatusClass.length; i++) {
+            if (byStatusClass[i] != null) {
+                sb.append(i).append("xx=").append(byStatusClass[i]).append(", ");
+            }
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,41 @@
+package com.byoutline.eventcallback.metrics;
+
+import com.byoutline.eventcallback.IBus;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives measurements of callbacks created from config this listener was
+ * set on. Methods are called on thread that completes callback, so they should
+ * return quickly and must be thread safe.
+ * See {@link HistogramCallbackMetrics} for lock-free recorder.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface CallbackMetrics {
+
+    /**
+     * Endpoint name used for callbacks which builder was not given name.
+     */
+    String UNNAMED_ENDPOINT = "unnamed";
+
+    /**
+     * Called after all actions of completion were executed.
+     *
+     * @param endpoint     name passed to builder.
+     * @param outcome      how call completed.
+     * @param statusCode   HTTP status code, or 0 if there was no response.
+     * @param latencyNanos time from callback creation to start of completion processing.
+     */
+    void onCallCompleted(@Nonnull String endpoint, @Nonnull CallbackOutcome outcome, int statusCode, long latencyNanos);
+
+    /**
+     * Called after each call to {@link IBus}.
+     *
+     * @param endpoint      name passed to builder.
+     * @param eventCount    number of events passed in this call (more than one for
+     *                      {@link com.byoutline.eventcallback.BatchBus}).
+     * @param durationNanos how long bus blocked caller.
+     */
+    void onBusPost(@Nonnull String endpoint, int eventCount, long durationNanos);
+}
@@ -0,0 +1,26 @@
+package com.byoutline.eventcallback.metrics;
+
+/**
+ * How callback completed.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public enum CallbackOutcome {
+    SUCCESS,
+    /**
+     * Server returned error status code.
+     */
+    HTTP_ERROR,
+    /**
+     * Request did not reach server or response could not be read.
+     */
+    NETWORK_ERROR,
+    /**
+     * Call failed for other reason, for example response could not be converted.
+     */
+    UNEXPECTED_ERROR,
+    /**
+     * Session changed before call completed, so session only actions were dropped.
+     */
+    SESSION_EXPIRED
+}
@@ -0,0 +1,56 @@
+package com.byoutline.eventcallback.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measurements of single endpoint collected by {@link HistogramCallbackMetrics}.
+ * Latencies and durations are in nanoseconds.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class EndpointMetrics {
+
+    /**
+     * Time from callback creation to its completion.
+     */
+    public final LatencyHistogram latency = new LatencyHistogram();
+    /**
+     * Time that single bus call blocked completing thread.
+     */
+    public final LatencyHistogram busPostDuration = new LatencyHistogram();
+    private final AtomicLongArray outcomes = new AtomicLongArray(CallbackOutcome.values().length);
+    private final AtomicLong postedEvents = new AtomicLong();
+
+    void recordCompletion(CallbackOutcome outcome, long latencyNanos) {
+        outcomes.incrementAndGet(outcome.ordinal());
+        latency.record(latencyNanos);
+    }
+
+    void recordBusPost(int eventCount, long durationNanos) {
+        postedEvents.addAndGet(eventCount);
+        busPostDuration.record(durationNanos);
+    }
+
+    public long getOutcomeCount(CallbackOutcome outcome) {
+        return outcomes.get(outcome.ordinal());
+    }
+
+    /**
+     * @return number of events passed to bus (fan-out of all completions).
+     */
+    public long getPostedEventCount() {
+        return postedEvents.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("EndpointMetrics{");
+        for (CallbackOutcome outcome : CallbackOutcome.values()) {
+            result.append(outcome).append('=').append(getOutcomeCount(outcome)).append(", ");
+        }
+        return result.append("latency=").append(latency)
+                .append(", postedEvents=").append(getPostedEventCount())
+                .append(", busPostDuration=").append(busPostDuration).append('}').toString();
+    }
+}
@@ -0,0 +1,58 @@
+package com.byoutline.eventcallback.metrics;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link CallbackMetrics} that keeps latency histograms and outcome counters
+ * for each endpoint. Recording is lock-free, reading can be done at any time,
+ * for example from periodic reporter.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class HistogramCallbackMetrics implements CallbackMetrics {
+
+    private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+
+    @Override
+    public void onCallCompleted(@Nonnull String endpoint, @Nonnull CallbackOutcome outcome,
+                                int statusCode, long latencyNanos) {
+        forEndpoint(endpoint).recordCompletion(outcome, latencyNanos);
+    }
+
+    @Override
+    public void onBusPost(@Nonnull String endpoint, int eventCount, long durationNanos) {
+        forEndpoint(endpoint).recordBusPost(eventCount, durationNanos);
+    }
+
+    /**
+     * @return metrics of given endpoint, empty if nothing was recorded for it yet.
+     */
+    @Nonnull
+    public EndpointMetrics forEndpoint(@Nonnull String endpoint) {
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        if (metrics == null) {
+            EndpointMetrics newMetrics = new EndpointMetrics();
+            metrics = endpoints.putIfAbsent(endpoint, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @return live view of metrics for all endpoints that recorded anything.
+     */
+    public Map<String, EndpointMetrics> getAll() {
+        return Collections.unmodifiableMap(endpoints);
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramCallbackMetrics{" + endpoints + '}';
+    }
+}
@@ -0,0 +1,23 @@
+package com.byoutline.eventcallback.util;
+
+/**
+ * Source of monotonic time. Allows replacing {@link System#nanoTime()} in tests.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface Clock {
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public String toString() {
+            return "Clock.SYSTEM";
+        }
+    };
+
+    long nanoTime();
+}
@@ -0,0 +1,61 @@
+package com.byoutline.eventcallback.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ready to use executors for
+ * {@link com.byoutline.eventcallback.CallbackConfig#withCompletionExecutor(Executor)}.
+ * <br />
+ * Virtual threads are looked up by reflection, so this library can still run
+ * on JDKs (and Android versions) that do not have them.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public final class CompletionExecutors {
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadFactoryMethod();
+
+    private CompletionExecutors() {
+    }
+
+    private static Method findVirtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if current JDK can create virtual thread per task executor.
+     */
+    public static boolean isVirtualThreadPerTaskSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @return executor that starts new virtual thread for every task.
+     * @throws UnsupportedOperationException if current JDK does not support virtual threads.
+     */
+    public static ExecutorService virtualThreadPerTask() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JDK");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (Exception ex) {
+            throw new UnsupportedOperationException("Could not create virtual thread per task executor", ex);
+        }
+    }
+
+    /**
+     * @param fallback executor used if virtual threads are not supported.
+     * @return virtual thread per task executor if supported, fallback otherwise.
+     */
+    public static Executor virtualThreadPerTaskOr(Executor fallback) {
+        return isVirtualThreadPerTaskSupported() ? virtualThreadPerTask() : fallback;
+    }
+}
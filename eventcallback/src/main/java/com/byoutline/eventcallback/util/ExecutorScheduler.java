@@ -0,0 +1,29 @@
+package com.byoutline.eventcallback.util;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Scheduler} that runs tasks on {@link ScheduledExecutorService}.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public class ExecutorScheduler implements Scheduler {
+
+    private final ScheduledExecutorService executor;
+
+    public ExecutorScheduler(@Nonnull ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        executor.schedule(task, delay, unit);
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutorScheduler{" + "executor=" + executor + '}';
+    }
+}
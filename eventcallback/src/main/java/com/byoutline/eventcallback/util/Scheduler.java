@@ -0,0 +1,15 @@
+package com.byoutline.eventcallback.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks after delay. Allows replacing real time with virtual clock in tests.
+ * See {@link ExecutorScheduler} for implementation backed by
+ * {@link java.util.concurrent.ScheduledExecutorService}.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface Scheduler {
+
+    void schedule(Runnable task, long delay, TimeUnit unit);
+}
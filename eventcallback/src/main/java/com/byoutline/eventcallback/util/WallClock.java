@@ -0,0 +1,24 @@
+package com.byoutline.eventcallback.util;
+
+/**
+ * Source of wall clock time, for timestamps that must stay valid after restart.
+ * Allows replacing {@link System#currentTimeMillis()} in tests.
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+public interface WallClock {
+
+    WallClock SYSTEM = new WallClock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public String toString() {
+            return "WallClock.SYSTEM";
+        }
+    };
+
+    long currentTimeMillis();
+}
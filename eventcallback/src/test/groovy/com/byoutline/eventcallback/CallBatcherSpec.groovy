@@ -0,0 +1,139 @@
+package com.byoutline.eventcallback
+
+import com.byoutline.eventcallback.circuitbreaker.CircuitBreaker
+import com.byoutline.eventcallback.circuitbreaker.CircuitBreakers
+import com.byoutline.eventcallback.util.Clock
+import com.byoutline.eventcallback.util.Scheduler
+import retrofit.Callback
+import retrofit.RetrofitError
+import retrofit.client.Response
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class CallBatcherSpec extends Specification {
+    IBus bus = Mock()
+    List<Runnable> scheduled = []
+    Scheduler scheduler = { task, delay, unit -> scheduled << task } as Scheduler
+    List<List<String>> sentKeys = []
+    List<Callback<Map<String, String>>> batchCallbacks = []
+    BatchAdapter<String, String, Map<String, String>> adapter = new BatchAdapter<String, String, Map<String, String>>() {
+        @Override
+        void invoke(List<String> keys, Callback<Map<String, String>> callback) {
+            sentKeys << keys
+            batchCallbacks << callback
+        }
+
+        @Override
+        String resultFor(String key, Map<String, String> batchResult) {
+            return batchResult[key]
+        }
+    }
+    CallBatcher<String, String, Map<String, String>> batcher = new CallBatcher<>(adapter, scheduler, 20, TimeUnit.MILLISECONDS, 3)
+
+    EventCallback<String, String> callback(String name) {
+        return MockFactory.getSameSessionBuilder(new BusProvider(impl: bus))
+                .onSuccess().postResponseEvents(new ResponseEventImpl<String>()).validBetweenSessions()
+                .onError().postEvents("error " + name).validBetweenSessions()
+                .onStatusCodes(404).postEvents("missing " + name).validBetweenSessions()
+                .build()
+    }
+
+    static Response ok() {
+        return new Response("url", 200, "OK", [], null)
+    }
+
+    def "calls within window should be sent as one batch and results routed per key"() {
+        given:
+        batcher.call("1", callback("1"))
+        batcher.call("2", callback("2"))
+        batcher.call("1", callback("1 again"))
+
+        when:
+        scheduled.each { it.run() }
+
+        then:
+        sentKeys == [["1", "2"]]
+
+        when:
+        batchCallbacks[0].success(["1": "one", "2": "two"], ok())
+
+        then:
+        2 * bus.post({ it instanceof ResponseEvent && it.response == "one" })
+        1 * bus.post({ it instanceof ResponseEvent && it.response == "two" })
+    }
+
+    def "full batch should be sent immediately and its scheduled send ignored"() {
+        when:
+        ["1", "2", "3", "4"].each { batcher.call(it, callback(it)) }
+
+        then:
+        sentKeys == [["1", "2", "3"]]
+        batcher.pendingSize() == 1
+
+        when:
+        scheduled.each { it.run() }
+
+        then:
+        sentKeys == [["1", "2", "3"], ["4"]]
+    }
+
+    def "missing result should execute error and 404 actions of its callback"() {
+        given:
+        batcher.call("1", callback("1"))
+        batcher.call("2", callback("2"))
+        batcher.flush()
+
+        when:
+        batchCallbacks[0].success(["1": "one"], ok())
+
+        then:
+        1 * bus.post({ it instanceof ResponseEvent && it.response == "one" })
+        1 * bus.post("missing 2")
+        1 * bus.post("error 2")
+        0 * bus.post("error 1")
+    }
+
+    def "failed batch should fail all callbacks"() {
+        given:
+        batcher.call("1", callback("1"))
+        batcher.call("2", callback("2"))
+        batcher.flush()
+
+        when:
+        batchCallbacks[0].failure(RetrofitError.networkError("url", new IOException()))
+
+        then:
+        1 * bus.post("error 1")
+        1 * bus.post("error 2")
+    }
+
+    def "failed batch should be recorded once and not retried by batched callbacks"() {
+        given:
+        def breakers = new CircuitBreakers(0.5, 2, 10, 30, TimeUnit.SECONDS, Clock.SYSTEM)
+        List<Runnable> retries = []
+        def retryPolicy = new RetryPolicy(3, { task, delay, unit -> retries << task } as Scheduler)
+        def builder = {
+            MockFactory.getEventCallbackBuilder(MockFactory.getSameSessionConfig(new BusProvider(impl: bus))
+                    .withCircuitBreakers(breakers))
+                    .endpoint("items")
+                    .retry(retryPolicy)
+                    .onError().postEvents("error").validBetweenSessions()
+        }
+        batcher.call("1", builder().build())
+        batcher.call("2", builder().build())
+        batcher.flush()
+
+        when:
+        batchCallbacks[0].failure(RetrofitError.networkError("url", new IOException()))
+
+        then:
+        2 * bus.post("error")
+        retries.empty
+        breakers.forEndpoint("items").state == CircuitBreaker.State.CLOSED
+    }
+}
@@ -0,0 +1,157 @@
+package com.byoutline.eventcallback
+
+import com.byoutline.eventcallback.circuitbreaker.CircuitBreakers
+import com.byoutline.eventcallback.util.Clock
+import com.byoutline.eventcallback.util.Scheduler
+import retrofit.Callback
+import retrofit.RetrofitError
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class CallCoalescerSpec extends Specification {
+    IBus bus = Mock()
+    List<Callback<String>> started = []
+    CallInvoker<String> invoker = { started << it } as CallInvoker<String>
+    CallCoalescer coalescer = new CallCoalescer()
+
+    def template(String prefix) {
+        return MockFactory.getSameSessionBuilder(new BusProvider(impl: bus))
+                .onCreate().postEvents(prefix + "create").validBetweenSessions()
+                .onSuccess().postEvents(prefix + "success").validBetweenSessions()
+                .onError().postEvents(prefix + "error").validBetweenSessions()
+                .buildTemplate()
+    }
+
+    def "same template requested while in flight should start one call and post events once"() {
+        given:
+        def template = template("")
+
+        when:
+        def first = coalescer.call("user/1", template, invoker)
+        def second = coalescer.call("user/1", template, invoker)
+
+        then:
+        first
+        !second
+        started.size() == 1
+        1 * bus.post("create")
+
+        when:
+        started[0].success("s", null)
+
+        then:
+        1 * bus.post("success")
+        !coalescer.isInFlight("user/1")
+    }
+
+    def "different templates should share single call"() {
+        given:
+        def a = template("a")
+        def b = template("b")
+
+        when:
+        coalescer.call("user/1", a, invoker)
+        coalescer.call("user/1", b, invoker)
+        started[0].failure(RetrofitError.networkError("url", new IOException()))
+
+        then:
+        started.size() == 1
+        1 * bus.post("aerror")
+        1 * bus.post("berror")
+    }
+
+    def "different keys and completed calls should start new call"() {
+        given:
+        def template = template("")
+
+        when:
+        coalescer.call("user/1", template, invoker)
+        coalescer.call("user/2", template, invoker)
+        started[0].success("s", null)
+        coalescer.call("user/1", template, invoker)
+
+        then:
+        started.size() == 3
+    }
+
+    def "failed invocation should not leave call in flight"() {
+        given:
+        def failingInvoker = { throw new IllegalStateException() } as CallInvoker<String>
+
+        when:
+        coalescer.call("user/1", template(""), failingInvoker)
+
+        then:
+        thrown(IllegalStateException)
+        !coalescer.isInFlight("user/1")
+    }
+
+    def "onCreate subscribers should not run under coalescer lock"() {
+        given:
+        def lockHeld = []
+        bus.post("create") >> { lockHeld << Thread.holdsLock(coalescer.@inFlight) }
+
+        when:
+        coalescer.call("user/1", template(""), invoker)
+        coalescer.call("user/1", template(""), invoker)
+
+        then:
+        lockHeld == [false, false]
+    }
+
+    def "failed shared call should be retried once and fail attached callbacks after last attempt"() {
+        given:
+        List<Runnable> retries = []
+        def retrying = MockFactory.getSameSessionBuilder(new BusProvider(impl: bus))
+                .retry(new RetryPolicy(2, { task, delay, unit -> retries << task } as Scheduler))
+                .onError().postEvents("aerror").validBetweenSessions()
+                .buildTemplate()
+        coalescer.call("user/1", retrying, invoker)
+        coalescer.call("user/1", template("b"), invoker)
+
+        when:
+        started[0].failure(RetrofitError.networkError("url", new IOException()))
+
+        then:
+        retries.size() == 1
+        coalescer.isInFlight("user/1")
+        0 * bus.post(_)
+
+        when:
+        retries[0].run()
+        started[1].failure(RetrofitError.networkError("url", new IOException()))
+
+        then:
+        started.size() == 2
+        started[1].is(started[0])
+        retries.size() == 1
+        !coalescer.isInFlight("user/1")
+        1 * bus.post("aerror")
+        1 * bus.post("berror")
+    }
+
+    def "call should not be started when circuit breaker is open"() {
+        given:
+        def breakers = new CircuitBreakers(0.5, 1, 10, 30, TimeUnit.SECONDS, Clock.SYSTEM)
+        def breakerTemplate = MockFactory.getEventCallbackBuilder(MockFactory.getSameSessionConfig(new BusProvider(impl: bus))
+                .withCircuitBreakers(breakers))
+                .endpoint("user")
+                .onError().postEvents("error").validBetweenSessions()
+                .buildTemplate()
+        breakers.forEndpoint("user").onFailure()
+
+        when:
+        def sent = coalescer.call("user/1", breakerTemplate, invoker)
+
+        then:
+        !sent
+        started.empty
+        !coalescer.isInFlight("user/1")
+        1 * bus.post("error")
+    }
+}
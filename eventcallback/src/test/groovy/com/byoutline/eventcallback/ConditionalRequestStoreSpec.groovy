@@ -0,0 +1,89 @@
+package com.byoutline.eventcallback
+
+import retrofit.Callback
+import retrofit.RetrofitError
+import retrofit.client.Header
+import retrofit.client.Response
+import spock.lang.Specification
+
+import javax.inject.Provider
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class ConditionalRequestStoreSpec extends Specification {
+    IBus bus = Mock()
+    String sessionId = "a"
+    List<Callback<String>> started = []
+    List<List<String>> sentHeaders = []
+    ConditionalCallInvoker<String> invoker = { String etag, String since, Callback<String> cb ->
+        sentHeaders << [etag, since]
+        started << cb
+    } as ConditionalCallInvoker<String>
+    ConditionalRequestStore store = new ConditionalRequestStore(2)
+
+    EventCallbackTemplate<String, String> template = MockFactory.getEventCallbackBuilder(
+            MockFactory.getConfig({ sessionId } as Provider<String>, new BusProvider(impl: bus)))
+            .onSuccess().postResponseEvents(new RetrofitResponseEventImpl<String>()).validThisSessionOnly()
+            .onStatusCodes(304).postEvents("notModified").validBetweenSessions()
+            .buildTemplate()
+
+    static Response ok(List<Header> headers) {
+        return new Response("url", 200, "OK", headers, null)
+    }
+
+    static RetrofitError notModified() {
+        return RetrofitError.httpError("url", new Response("url", 304, "Not Modified", [], null), null, null)
+    }
+
+    def "should send stored validators and replay stored result on 304"() {
+        given:
+        store.call("user/1", template, invoker)
+        started[0].success("stored", ok([new Header("etag", '"v1"'), new Header("Last-Modified", "Mon")]))
+
+        when:
+        store.call("user/1", template, invoker)
+        started[1].failure(notModified())
+
+        then:
+        sentHeaders == [[null, null], ['"v1"', "Mon"]]
+        1 * bus.post({ it instanceof RetrofitResponseEvent && it.response == "stored" && it.status == 304 })
+        1 * bus.post("notModified")
+    }
+
+    def "responses without validators should not be stored"() {
+        when:
+        store.call("user/1", template, invoker)
+        started[0].success("fresh", ok([]))
+
+        then:
+        store.size() == 0
+    }
+
+    def "304 without stored result should be passed as failure"() {
+        given:
+        store.call("user/1", template, invoker)
+
+        when:
+        started[0].failure(notModified())
+
+        then:
+        1 * bus.post("notModified")
+        0 * bus.post({ it instanceof RetrofitResponseEvent })
+    }
+
+    def "validators should not be sent in different session"() {
+        given:
+        store.call("user/1", template, invoker)
+        started[0].success("stored", ok([new Header("ETag", '"v1"')]))
+        sessionId = "b"
+
+        when:
+        store.call("user/1", template, invoker)
+
+        then:
+        sentHeaders[1] == [null, null]
+        store.size() == 0
+    }
+}
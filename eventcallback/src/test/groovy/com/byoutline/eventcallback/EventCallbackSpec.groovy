@@ -1,5 +1,11 @@
 package com.byoutline.eventcallback
 
+import com.byoutline.eventcallback.circuitbreaker.CircuitBreakers
+import com.byoutline.eventcallback.metrics.CallbackMetrics
+import com.byoutline.eventcallback.metrics.CallbackOutcome
+import com.byoutline.eventcallback.metrics.HistogramCallbackMetrics
+import com.byoutline.eventcallback.util.Clock
+import retrofit.Callback
 import retrofit.RetrofitError
 import retrofit.client.Header
 import retrofit.client.Response
@@ -7,6 +13,8 @@ import retrofit.mime.TypedInput
 import spock.lang.Shared
 import spock.lang.Unroll
 
+import java.util.concurrent.TimeUnit
+
 /**
  *
  * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com> on 27.06.14.
@@ -40,7 +48,7 @@ class EventCallbackSpec extends spock.lang.Specification {
     @Unroll
     def "onSuccess should post ion#pC times for callback: #cb"() {
         when:
-        cb.config.bus.impl = bus
+        cb.template.config.bus.impl = bus
         cb.success("s", null)
 
         then:
@@ -63,7 +71,7 @@ class EventCallbackSpec extends spock.lang.Specification {
         retrofitError.getBody() >> event
 
         when:
-        cb.config.bus.impl = bus
+        cb.template.config.bus.impl = bus
         cb.failure(retrofitError)
 
         then:
@@ -83,7 +91,7 @@ class EventCallbackSpec extends spock.lang.Specification {
         Response response = new Response("url", 200, "reason", [], null)
 
         when:
-        cb.config.bus.impl = bus
+        cb.template.config.bus.impl = bus
         cb.success("s", response)
 
         then:
@@ -100,6 +108,30 @@ class EventCallbackSpec extends spock.lang.Specification {
                 .onStatusCodes(200).postEvents(event).validThisSessionOnly().build()
     }
 
+    @Unroll
+    def "status #status should post only actions registered for it"() {
+        given:
+        def cb = MockFactory.getSameSessionBuilder(new BusProvider(impl: bus))
+                .onStatusCodes(500, 204).postEvents("server or empty").validBetweenSessions()
+                .onStatusCodes(404).postEvents("missing").validBetweenSessions()
+                .onStatusCodes(999).postEvents("nonstandard").validBetweenSessions()
+                .build()
+
+        when:
+        cb.success("s", new Response("url", status, "reason", [], null))
+
+        then:
+        (expected == null ? 0 : 1) * bus.post(_) >> { assert it[0] == expected }
+
+        where:
+        status | expected
+        204    | "server or empty"
+        404    | "missing"
+        500    | "server or empty"
+        999    | "nonstandard"
+        200    | null
+    }
+
     @Unroll
     def "onStatusCodes shold post #pc times on 400 failure for callback: #cb"() {
         given:
@@ -108,7 +140,7 @@ class EventCallbackSpec extends spock.lang.Specification {
         retrofitError.getResponse() >> response
 
         when:
-        cb.config.bus.impl = bus
+        cb.template.config.bus.impl = bus
         cb.failure(retrofitError)
 
         then:
@@ -160,7 +192,7 @@ class EventCallbackSpec extends spock.lang.Specification {
         def cb = MockFactory.getSameSessionBuilder(new BusProvider())
                 .onSuccess().postResponseEvents(new RetrofitResponseEventImpl<String>()).validBetweenSessions()
                 .build()
-        cb.config.bus.impl = bus
+        cb.template.config.bus.impl = bus
 
         when:
         cb.success(body, response)
@@ -173,4 +205,401 @@ class EventCallbackSpec extends spock.lang.Specification {
             assert result.getStatus() == response.getStatus()
         }
     }
+
+    def "response events of one completion should share case-insensitive headers view"() {
+        given:
+        def response = new Response("url", 200, "OK", [new Header("ETag", "abc"), new Header("X-Rate-Limit", "10")], null)
+        def first = new RetrofitResponseEventImpl<String>("etag")
+        def second = new RetrofitResponseEventImpl<String>("x-rate-limit")
+        def cb = MockFactory.getSameSessionBuilder(new BusProvider(impl: bus))
+                .onSuccess().postResponseEvents(first, second).validBetweenSessions()
+                .build()
+
+        when:
+        cb.success("s", response)
+
+        then:
+        cb.template.onSuccessActions.indexedHeaderNames == ["etag", "x-rate-limit"] as Set
+        first.headers.is(response.headers)
+        first.getHeader("etag") == "abc"
+        second.getHeader("X-RATE-LIMIT") == "10"
+        first.@headers.is(second.@headers)
+    }
+
+    def "callbacks created from template should share actions but not session"() {
+        given:
+        def busProvider = new BusProvider(impl: bus)
+        def template = MockFactory.getMultiSessionBuilder(busProvider)
+                .onCreate().postEvents(event).validBetweenSessions()
+                .onSuccess().postEvents(event).validThisSessionOnly()
+                .buildTemplate()
+
+        when:
+        def first = template.newCallback()
+        def second = template.newCallback()
+
+        then:
+        2 * bus.post(event)
+
+        when:
+        first.success("s", null)
+        second.success("s", null)
+
+        then:
+        0 * bus.post(_)
+    }
+
+    def "onSuccess should post new event instance for each completion when passed factory"() {
+        given:
+        def posted = []
+        def factory = { new ResponseEventImpl<String>() } as ResponseEventFactory<String>
+        def template = MockFactory.getSameSessionBuilder(new BusProvider(impl: { posted << it } as IBus))
+                .onSuccess().postNewResponseEvents(factory).validBetweenSessions()
+                .buildTemplate()
+
+        when:
+        template.newCallback().success("first", null)
+        template.newCallback().success("second", null)
+
+        then:
+        posted*.response == ["first", "second"]
+        !posted[0].is(posted[1])
+    }
+
+    def "pooled response events should be cleared and reused after post to synchronous bus"() {
+        given:
+        def posted = []
+        def pool = new ResponseEventPool<String>({ new ResponseEventImpl<String>() } as ResponseEventFactory<String>, 1)
+        def template = MockFactory.getSameSessionBuilder({ posted << [it, it.response] } as SynchronousBus)
+                .onSuccess().postNewResponseEvents(pool).validBetweenSessions()
+                .buildTemplate()
+
+        when:
+        template.newCallback().success("first", null)
+        template.newCallback().success("second", null)
+
+        then:
+        posted.collect { it[1] } == ["first", "second"]
+        posted[0][0].is(posted[1][0])
+        posted[1][0].response == null
+    }
+
+    def "pooled response events should not be reused if bus may deliver later"() {
+        given:
+        def posted = []
+        def pool = new ResponseEventPool<String>({ new ResponseEventImpl<String>() } as ResponseEventFactory<String>, 1)
+        def template = MockFactory.getSameSessionBuilder(new BusProvider(impl: { posted << it } as IBus))
+                .onSuccess().postNewResponseEvents(pool).validBetweenSessions()
+                .buildTemplate()
+
+        when:
+        template.newCallback().success("first", null)
+        template.newCallback().success("second", null)
+
+        then:
+        posted*.response == ["first", "second"]
+        !posted[0].is(posted[1])
+    }
+
+    def "shared success handler registered after first response should be called"() {
+        given:
+        SuccessHandler<String> first = Mock()
+        SuccessHandler<CharSequence> second = Mock()
+        def config = MockFactory.getSameSessionConfig(bus)
+        config.registerSharedSuccessHandler(String, first)
+        def template = MockFactory.getEventCallbackBuilder(config).buildTemplate()
+
+        when:
+        template.newCallback().success("s", null)
+        config.registerSharedSuccessHandler(CharSequence, second)
+        template.newCallback().success("s", null)
+
+        then:
+        2 * first.onCallSuccess("s")
+        1 * second.onCallSuccess("s")
+    }
+
+    @Unroll
+    def "onStatusCodeClasses(5) should post #pC times on #status failure"() {
+        given:
+        RetrofitError retrofitError = GroovyMock(RetrofitError)
+        retrofitError.getResponse() >> new Response("url", status, "reason", [], null)
+        def cb = MockFactory.getSameSessionBuilder(new BusProvider(impl: bus))
+                .onStatusCodeClasses(5).postEvents(event).validBetweenSessions()
+                .onStatusCodes(503).postEvents(event).validBetweenSessions()
+                .build()
+
+        when:
+        cb.failure(retrofitError)
+
+        then:
+        pC * bus.post(event)
+
+        where:
+        pC | status
+        2  | 503
+        1  | 500
+        0  | 404
+    }
+
+    def "should post all events of action group at once to BatchBus"() {
+        given:
+        BatchBus batchBus = Mock()
+        def cb = MockFactory.getSameSessionBuilder(batchBus)
+                .onSuccess().postEvents("a", "b").validThisSessionOnly()
+                .onSuccess().postEvents("c").validBetweenSessions()
+                .build()
+
+        when:
+        cb.success("s", null)
+
+        then:
+        1 * batchBus.postAll(["a", "b", "c"] as Object[])
+        0 * batchBus.post(_)
+    }
+
+    def "completions should run on configured executor one at a time in order"() {
+        given:
+        List<Runnable> scheduled = []
+        def executor = { scheduled << it } as java.util.concurrent.Executor
+        def config = MockFactory.getSameSessionConfig(new BusProvider(impl: bus)).withCompletionExecutor(executor)
+        def cb = MockFactory.getEventCallbackBuilder(config)
+                .onSuccess().postEvents("success").validBetweenSessions()
+                .onError().postEvents("error").validBetweenSessions()
+                .build()
+
+        when:
+        cb.success("s", null)
+        cb.failure(RetrofitError.networkError("url", new IOException()))
+
+        then:
+        0 * bus.post(_)
+        scheduled.size() == 1
+
+        when:
+        scheduled.remove(0).run()
+
+        then:
+        1 * bus.post("success")
+        scheduled.size() == 1
+
+        when:
+        scheduled.remove(0).run()
+
+        then:
+        1 * bus.post("error")
+    }
+
+    @Unroll
+    def "error body should be parsed #parseCount times for callback: #cb"() {
+        given:
+        RetrofitError retrofitError = GroovyMock(RetrofitError)
+        retrofitError.getResponse() >> new Response("url", 400, "reason", [], new retrofit.mime.TypedString("{}"))
+        cb.template.config.bus.impl = bus
+
+        when:
+        cb.failure(retrofitError)
+
+        then:
+        parseCount * retrofitError.getBodyAs(_) >> event
+
+        where:
+        parseCount | cb
+        0          | MockFactory.getSameSessionBuilder(new BusProvider()).onError().postEvents(event).validBetweenSessions().build()
+        1          | MockFactory.getSameSessionBuilder(new BusProvider()).onError().postResponseEvents(new ResponseEventImpl<String>()).validThisSessionOnly().build()
+        0          | MockFactory.getMultiSessionBuilder(new BusProvider()).onError().postResponseEvents(new ResponseEventImpl<String>()).validThisSessionOnly().build()
+    }
+
+    @Unroll
+    def "metrics should record #outcome for named endpoint"() {
+        given:
+        CallbackMetrics metrics = Mock()
+        def config = MockFactory.getConfig(sameSession, new BusProvider(impl: bus)).withMetrics(metrics)
+        def cb = MockFactory.getEventCallbackBuilder(config).endpoint("user")
+                .onSuccess().postEvents(event).validBetweenSessions()
+                .onError().postEvents(event).validBetweenSessions()
+                .build()
+
+        when:
+        complete(cb)
+
+        then:
+        1 * metrics.onBusPost("user", 1, { it >= 0 })
+        1 * metrics.onCallCompleted("user", outcome, status, { it >= 0 })
+
+        where:
+        outcome                          | status | sameSession | complete
+        CallbackOutcome.SUCCESS          | 200    | true        | { it.success("s", new Response("url", 200, "OK", [], null)) }
+        CallbackOutcome.SESSION_EXPIRED  | 200    | false       | { it.success("s", new Response("url", 200, "OK", [], null)) }
+        CallbackOutcome.HTTP_ERROR       | 500    | true        | { it.failure(RetrofitError.httpError("url", new Response("url", 500, "Error", [], null), null, String)) }
+        CallbackOutcome.NETWORK_ERROR    | 0      | true        | { it.failure(RetrofitError.networkError("url", new IOException())) }
+        CallbackOutcome.UNEXPECTED_ERROR | 0      | true        | { it.failure(RetrofitError.unexpectedError("url", new RuntimeException())) }
+    }
+
+    def "histogram metrics should aggregate completions per endpoint"() {
+        given:
+        def metrics = new HistogramCallbackMetrics()
+        def config = MockFactory.getSameSessionConfig(new BusProvider(impl: bus)).withMetrics(metrics)
+        def template = MockFactory.getEventCallbackBuilder(config).endpoint("user")
+                .onSuccess().postEvents("a", "b").validBetweenSessions()
+                .buildTemplate()
+
+        when:
+        3.times { template.newCallback().success("s", null) }
+
+        then:
+        metrics.getAll().keySet() == ["user"] as Set
+        with(metrics.forEndpoint("user")) {
+            getOutcomeCount(CallbackOutcome.SUCCESS) == 3
+            latency.totalCount == 3
+            postedEventCount == 6
+            busPostDuration.totalCount == 6
+        }
+    }
+
+    def "session version provider should be used instead of comparing session ids"() {
+        given:
+        def sessionProvider = new VersionedSessionIdProvider()
+        def config = MockFactory.getConfig(sessionProvider, new BusProvider(impl: bus))
+        def builder = MockFactory.getEventCallbackBuilder(config)
+                .onSuccess().postEvents("sessionOnly").validThisSessionOnly()
+                .onStatusCodes(200).postEvents("status").validThisSessionOnly()
+        def sameSessionCb = builder.build()
+        def changedSessionCb = builder.build()
+        def getCountAfterCreation = sessionProvider.getCount
+
+        when:
+        sameSessionCb.success("s", new Response("url", 200, "OK", [], null))
+
+        then:
+        1 * bus.post("status")
+        1 * bus.post("sessionOnly")
+        sessionProvider.getCount == getCountAfterCreation
+
+        when:
+        sessionProvider.changeSession("b")
+        changedSessionCb.success("s", new Response("url", 200, "OK", [], null))
+
+        then:
+        0 * bus.post(_)
+    }
+
+    def "events should be posted from highest priority keeping registration order"() {
+        given:
+        def posted = []
+        PriorityBus priorityBus = Mock()
+        priorityBus.post(_, _) >> { posted << it[0] + ":" + it[1] }
+        def cb = MockFactory.getSameSessionBuilder(priorityBus)
+                .onSuccess().postEvents("analytics").withPriority(Priority.LOW).validBetweenSessions()
+                .onSuccess().postEvents("a", "b").validThisSessionOnly()
+                .onSuccess().postEvents("ui").withPriority(Priority.HIGH).validBetweenSessions()
+                .onSuccess().postEvents("c").validBetweenSessions()
+                .build()
+
+        when:
+        cb.success("s", null)
+
+        then:
+        posted == ["ui:HIGH", "a:NORMAL", "b:NORMAL", "c:NORMAL", "analytics:LOW"]
+    }
+
+    def "event registered twice should keep priority of each registration"() {
+        given:
+        def posted = []
+        PriorityBus priorityBus = Mock()
+        priorityBus.post(_, _) >> { posted << it[0] + ":" + it[1] }
+        def event = "refresh"
+        def cb = MockFactory.getSameSessionBuilder(priorityBus)
+                .onSuccess().postEvents(event).withPriority(Priority.LOW).validBetweenSessions()
+                .onSuccess().postEvents("other").validBetweenSessions()
+                .onSuccess().postEvents(event).withPriority(Priority.HIGH).validBetweenSessions()
+                .build()
+
+        when:
+        cb.success("s", null)
+
+        then:
+        posted == ["refresh:HIGH", "other:NORMAL", "refresh:LOW"]
+    }
+
+    def "open circuit breaker should execute error actions without calling network"() {
+        given:
+        def breakers = new CircuitBreakers(0.5, 1, 10, 30, TimeUnit.SECONDS, Clock.SYSTEM)
+        def config = MockFactory.getSameSessionConfig(new BusProvider(impl: bus)).withCircuitBreakers(breakers)
+        def builder = {
+            MockFactory.getEventCallbackBuilder(config).endpoint("user")
+                    .onError().postEvents("error").validBetweenSessions()
+                    .onStatusCodes(503).postEvents("unavailable").validBetweenSessions()
+        }
+        List<Callback<String>> invoked = []
+        def invoker = { invoked << it } as CallInvoker<String>
+        builder().build().failure(RetrofitError.networkError("url", new IOException()))
+
+        when:
+        def started = builder().build().call(invoker)
+
+        then:
+        !started
+        invoked.empty
+        1 * bus.post("unavailable")
+        1 * bus.post("error")
+    }
+
+    @Unroll
+    def "indexed headers should be #expected for factory #factory"() {
+        given:
+        def cb = MockFactory.getSameSessionBuilder(new BusProvider(impl: bus))
+                .onSuccess().postResponseEvents(new RetrofitResponseEventImpl<String>("ETag")).validBetweenSessions()
+                .onSuccess().postNewResponseEvents(factory).validBetweenSessions()
+                .build()
+
+        expect:
+        cb.template.onSuccessActions.indexedHeaderNames == expected
+
+        where:
+        factory                                                              | expected
+        new DeclaringFactory("Link")                                         | ["etag", "link"] as Set
+        new ResponseEventPool<String>(new DeclaringFactory("Link"), 2)       | ["etag", "link"] as Set
+        new DeclaringFactory(null)                                           | null
+        ({ -> new RetrofitResponseEventImpl<String>() } as ResponseEventFactory) | null
+    }
+
+    static class DeclaringFactory implements LazyHeadersResponseEventFactory<String> {
+        final String[] headers
+
+        DeclaringFactory(String header) {
+            headers = header == null ? null : [header] as String[]
+        }
+
+        ResponseEvent<String> create() {
+            return new RetrofitResponseEventImpl<String>()
+        }
+
+        String[] neededHeaders() {
+            return headers
+        }
+
+        String toString() {
+            return "declaring " + headers
+        }
+    }
+
+    def "flag group should be updated once per dispatch with flags of all setters"() {
+        given:
+        int loading = FlagGroup.flag(0)
+        int loaded = FlagGroup.flag(1)
+        int error = FlagGroup.flag(2)
+        FlagGroup flags = new FlagGroup(loading | error)
+        def cb = MockFactory.getSameSessionBuilder(new BusProvider(impl: bus))
+                .onSuccess().setFlags(flags, loading | error).toFalse()
+                .onSuccess().setFlags(flags, loaded).toTrue()
+                .build()
+
+        when:
+        cb.success("s", null)
+
+        then:
+        cb.template.onSuccessActions.flagsToSet.length == 1
+        flags.get() == loaded
+    }
 }
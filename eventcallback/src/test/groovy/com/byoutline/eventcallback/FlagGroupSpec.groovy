@@ -0,0 +1,55 @@
+package com.byoutline.eventcallback
+
+import spock.lang.Specification
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class FlagGroupSpec extends Specification {
+    int a = FlagGroup.flag(0)
+    int b = FlagGroup.flag(1)
+    int c = FlagGroup.flag(31)
+    FlagGroup flags = new FlagGroup()
+
+    def "update should set and clear flags together"() {
+        given:
+        flags.set(a | c)
+
+        when:
+        def previous = flags.update(b, a)
+
+        then:
+        previous == (a | c)
+        flags.isSet(b | c)
+        !flags.isAnySet(a)
+    }
+
+    def "flag should be set if it is in both masks"() {
+        when:
+        flags.update(a, a | b)
+
+        then:
+        flags.get() == a
+    }
+
+    def "isSet should require all flags while isAnySet requires one"() {
+        when:
+        flags.set(a)
+
+        then:
+        !flags.isSet(a | b)
+        flags.isAnySet(a | b)
+    }
+
+    def "flag index outside of int should be rejected"() {
+        when:
+        FlagGroup.flag(index)
+
+        then:
+        thrown IllegalArgumentException
+
+        where:
+        index << [-1, 32]
+    }
+}
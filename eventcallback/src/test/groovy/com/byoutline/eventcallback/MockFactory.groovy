@@ -57,3 +57,23 @@ class StubBus implements IBus {
     }
 }
 
+
+class VersionedSessionIdProvider implements Provider<String>, SessionVersionProvider {
+    String sessionId = "a"
+    long version = 0
+    int getCount = 0
+
+    String get() {
+        getCount++
+        return sessionId
+    }
+
+    long getSessionVersion() {
+        return version
+    }
+
+    void changeSession(String newSessionId) {
+        sessionId = newSessionId
+        version++
+    }
+}
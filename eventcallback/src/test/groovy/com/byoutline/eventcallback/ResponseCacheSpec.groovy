@@ -0,0 +1,182 @@
+package com.byoutline.eventcallback
+
+import com.byoutline.eventcallback.circuitbreaker.CircuitBreaker
+import com.byoutline.eventcallback.circuitbreaker.CircuitBreakers
+import com.byoutline.eventcallback.util.Clock
+import com.byoutline.eventcallback.util.Scheduler
+import retrofit.RetrofitError
+import retrofit.Callback
+import retrofit.client.Response
+import spock.lang.Specification
+
+import javax.inject.Provider
+import java.util.concurrent.TimeUnit
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class ResponseCacheSpec extends Specification {
+    IBus bus = Mock()
+    long now = 0
+    String sessionId = "a"
+    Clock clock = { now } as Clock
+    List<Callback<String>> started = []
+    CallInvoker<String> invoker = { started << it } as CallInvoker<String>
+    ResponseCache cache = new ResponseCache(2, 10, TimeUnit.SECONDS, clock)
+
+    EventCallbackTemplate<String, String> template = MockFactory.getEventCallbackBuilder(
+            MockFactory.getConfig({ sessionId } as Provider<String>, new BusProvider(impl: bus)))
+            .onSuccess().postResponseEvents(new RetrofitResponseEventImpl<String>()).validThisSessionOnly()
+            .buildTemplate()
+
+    static Response ok() {
+        return new Response("url", 200, "OK", [], null)
+    }
+
+    def "hit should replay success actions with cached result without calling network"() {
+        given:
+        cache.call("user/1", template, invoker)
+        started[0].success("cached", new Response("url", 200, "OK", [], new retrofit.mime.TypedString("body")))
+
+        when:
+        def hit = cache.call("user/1", template, invoker)
+
+        then:
+        hit
+        started.size() == 1
+        1 * bus.post({ it.response == "cached" && it.status == 200 })
+    }
+
+    def "expired entries should be fetched again"() {
+        given:
+        cache.call("user/1", template, invoker)
+        started[0].success("cached", ok())
+
+        when:
+        now = TimeUnit.SECONDS.toNanos(10)
+        def hit = cache.call("user/1", template, invoker)
+
+        then:
+        !hit
+        started.size() == 2
+        cache.size() == 0
+    }
+
+    def "least recently used entry should be evicted"() {
+        given:
+        ["1", "2"].each { cache.call(it, template, invoker) }
+        started*.success("s", ok())
+        cache.call("1", template, invoker)
+
+        when:
+        cache.call("3", template, invoker)
+        started[2].success("s", ok())
+
+        then:
+        cache.size() == 2
+        cache.call("1", template, invoker)
+        !cache.call("2", template, invoker)
+    }
+
+    def "result cached in different session should not be returned"() {
+        given:
+        cache.call("user/1", template, invoker)
+        started[0].success("cached", ok())
+
+        when:
+        sessionId = "b"
+        def hit = cache.call("user/1", template, invoker)
+
+        then:
+        !hit
+        started.size() == 2
+    }
+
+    def "failures should not be cached"() {
+        given:
+        cache.call("user/1", template, invoker)
+        started[0].failure(retrofit.RetrofitError.networkError("url", new IOException()))
+
+        expect:
+        cache.size() == 0
+        !cache.call("user/1", template, invoker)
+    }
+
+    def "hit should not close half open circuit breaker"() {
+        given:
+        long breakerNow = 0
+        def breakers = new CircuitBreakers(0.5, 1, 10, 30, TimeUnit.SECONDS, { breakerNow } as Clock)
+        EventCallbackTemplate<String, String> breakerTemplate = MockFactory.getEventCallbackBuilder(
+                MockFactory.getConfig({ sessionId } as Provider<String>, new BusProvider(impl: bus))
+                        .withCircuitBreakers(breakers))
+                .endpoint("user")
+                .onSuccess().postResponseEvents(new RetrofitResponseEventImpl<String>()).validThisSessionOnly()
+                .buildTemplate()
+        cache.call("user/1", breakerTemplate, invoker)
+        started[0].success("cached", ok())
+        3.times { breakers.forEndpoint("user").onFailure() }
+        breakerNow = TimeUnit.SECONDS.toNanos(30)
+        breakers.forEndpoint("user").allowRequest()
+
+        when:
+        def hit = cache.call("user/1", breakerTemplate, invoker)
+
+        then:
+        hit
+        1 * bus.post({ it.response == "cached" })
+        breakers.forEndpoint("user").state == CircuitBreaker.State.HALF_OPEN
+    }
+
+    def "retried miss should repeat its own request and cache result"() {
+        given:
+        List<Runnable> retries = []
+        EventCallbackTemplate<String, String> retrying = MockFactory.getEventCallbackBuilder(
+                MockFactory.getConfig({ sessionId } as Provider<String>, new BusProvider(impl: bus)))
+                .retry(new RetryPolicy(2, { task, delay, unit -> retries << task } as Scheduler))
+                .onSuccess().postResponseEvents(new RetrofitResponseEventImpl<String>()).validThisSessionOnly()
+                .buildTemplate()
+        List<String> requested = []
+        def invokerFor = { String user -> return { cb -> requested << user; started << cb } as CallInvoker<String> }
+        cache.call("user/1", retrying, invokerFor("1"))
+        cache.call("user/2", retrying, invokerFor("2"))
+
+        when:
+        started[1].failure(RetrofitError.networkError("url", new IOException()))
+        retries[0].run()
+        started[2].success("second", ok())
+
+        then:
+        requested == ["1", "2", "2"]
+        1 * bus.post({ it.response == "second" })
+
+        when:
+        def hit = cache.call("user/2", retrying, invokerFor("2"))
+
+        then:
+        hit
+        1 * bus.post({ it.response == "second" })
+    }
+
+    def "miss should not call network when circuit breaker is open"() {
+        given:
+        def breakers = new CircuitBreakers(0.5, 1, 10, 30, TimeUnit.SECONDS, clock)
+        EventCallbackTemplate<String, String> breakerTemplate = MockFactory.getEventCallbackBuilder(
+                MockFactory.getConfig({ sessionId } as Provider<String>, new BusProvider(impl: bus))
+                        .withCircuitBreakers(breakers))
+                .endpoint("user")
+                .onError().postEvents("error").validBetweenSessions()
+                .onStatusCodes(503).postEvents("unavailable").validBetweenSessions()
+                .buildTemplate()
+        breakers.forEndpoint("user").onFailure()
+
+        when:
+        def hit = cache.call("user/1", breakerTemplate, invoker)
+
+        then:
+        !hit
+        started.empty
+        1 * bus.post("unavailable")
+        1 * bus.post("error")
+    }
+}
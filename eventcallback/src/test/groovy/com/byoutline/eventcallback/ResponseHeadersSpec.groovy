@@ -0,0 +1,46 @@
+package com.byoutline.eventcallback
+
+import retrofit.client.Header
+import spock.lang.Specification
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class ResponseHeadersSpec extends Specification {
+    List<Header> headerList = [new Header(null, "HTTP/1.1 200 OK"), new Header("Set-Cookie", "a=1"),
+                               new Header("Content-Type", "text/plain"), new Header("set-cookie", "b=2")]
+
+    def "should find headers ignoring case of name"() {
+        given:
+        def headers = new ResponseHeaders(headerList)
+
+        expect:
+        headers.get("content-type") == "text/plain"
+        headers.getAll("SET-COOKIE") == ["a=1", "b=2"]
+        headers.get("ETag") == null
+        headers.getAll("ETag").empty
+    }
+
+    def "should index only requested headers but still find others"() {
+        given:
+        def headers = new ResponseHeaders(headerList, ["set-cookie"] as Set)
+
+        when:
+        def cookies = headers.getAll("Set-Cookie")
+
+        then:
+        cookies == ["a=1", "b=2"]
+        headers.@index.keySet() == ["set-cookie"] as Set
+        headers.get("Content-Type") == "text/plain"
+    }
+
+    def "should not build index before first lookup"() {
+        when:
+        def headers = new ResponseHeaders(headerList)
+
+        then:
+        headers.@index == null
+        headers.asList().is(headerList)
+    }
+}
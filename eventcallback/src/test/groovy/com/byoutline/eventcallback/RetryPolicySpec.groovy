@@ -0,0 +1,122 @@
+package com.byoutline.eventcallback
+
+import com.byoutline.eventcallback.util.Scheduler
+import retrofit.Callback
+import retrofit.RetrofitError
+import retrofit.client.Response
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.TimeUnit
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class RetryPolicySpec extends Specification {
+    IBus bus = Mock()
+    List<Runnable> scheduled = []
+    List<Long> delays = []
+    Scheduler scheduler = { task, delay, unit -> scheduled << task; delays << unit.toMillis(delay) } as Scheduler
+    List<Callback<String>> invoked = []
+    CallInvoker<String> invoker = { invoked << it } as CallInvoker<String>
+
+    static RetrofitError httpError(int status) {
+        return RetrofitError.httpError("url", new Response("url", status, "reason", [], null), null, String)
+    }
+
+    EventCallback<String, String> callback(RetryPolicy policy) {
+        def cb = MockFactory.getSameSessionBuilder(new BusProvider(impl: bus))
+                .retry(policy)
+                .onError().postEvents("error").validBetweenSessions()
+                .onSuccess().postEvents("success").validBetweenSessions()
+                .build()
+        cb.call(invoker)
+        return cb
+    }
+
+    def "should retry until max attempts and post onError only after last attempt"() {
+        given:
+        def cb = callback(new RetryPolicy(3, scheduler).withJitter(0))
+
+        when:
+        cb.failure(httpError(503))
+        scheduled.remove(0).run()
+        invoked[1].failure(httpError(503))
+        scheduled.remove(0).run()
+
+        then:
+        0 * bus.post(_)
+        invoked == [cb, cb, cb]
+        delays == [200L, 400L]
+
+        when:
+        cb.failure(httpError(503))
+
+        then:
+        1 * bus.post("error")
+        scheduled.empty
+    }
+
+    def "success after retry should post onSuccess"() {
+        given:
+        def cb = callback(new RetryPolicy(3, scheduler))
+
+        when:
+        cb.failure(RetrofitError.networkError("url", new IOException()))
+        scheduled.remove(0).run()
+        invoked[1].success("s", null)
+
+        then:
+        1 * bus.post("success")
+        0 * bus.post("error")
+    }
+
+    @Unroll
+    def "should retry #description: #retried"() {
+        given:
+        def cb = callback(new RetryPolicy(2, scheduler).withRetryableStatusCodes(500))
+
+        when:
+        cb.failure(error)
+
+        then:
+        scheduled.size() == (retried ? 1 : 0)
+
+        where:
+        description       | error                                                 | retried
+        "listed status"   | httpError(500)                                        | true
+        "other status"    | httpError(503)                                        | false
+        "network error"   | RetrofitError.networkError("url", new IOException())  | true
+        "unexpected error"| RetrofitError.unexpectedError("url", new Exception()) | false
+    }
+
+    def "callback passed to Retrofit directly should not be retried"() {
+        given:
+        def cb = MockFactory.getSameSessionBuilder(new BusProvider(impl: bus))
+                .retry(new RetryPolicy(3, scheduler))
+                .onError().postEvents("error").validBetweenSessions()
+                .build()
+
+        when:
+        cb.failure(RetrofitError.networkError("url", new IOException()))
+
+        then:
+        scheduled.empty
+        1 * bus.post("error")
+    }
+
+    def "delay should grow exponentially up to max delay and be reduced by jitter"() {
+        given:
+        def random = Mock(Random)
+        random.nextDouble() >> 0.5d
+        def policy = new RetryPolicy(10, scheduler).withBackoff(100, 1000, TimeUnit.MILLISECONDS)
+
+        expect:
+        policy.withJitter(0).delayNanos(1) == TimeUnit.MILLISECONDS.toNanos(100)
+        policy.withJitter(0).delayNanos(3) == TimeUnit.MILLISECONDS.toNanos(400)
+        policy.withJitter(0).delayNanos(5) == TimeUnit.MILLISECONDS.toNanos(1000)
+        policy.withJitter(0).delayNanos(100) == TimeUnit.MILLISECONDS.toNanos(1000)
+        policy.withRandom(random).withJitter(0.5).delayNanos(1) == TimeUnit.MILLISECONDS.toNanos(75)
+    }
+}
@@ -0,0 +1,84 @@
+package com.byoutline.eventcallback
+
+import retrofit.client.Response
+import spock.lang.Specification
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class SessionCallbackRegistrySpec extends Specification {
+    IBus bus = Mock()
+    SessionCallbackRegistry registry = new SessionCallbackRegistry()
+    Response response = new Response("url", 200, "OK", [], null)
+
+    EventCallback<String, String> callback() {
+        def config = MockFactory.getSameSessionConfig(new BusProvider(impl: bus)).withSessionRegistry(registry)
+        return MockFactory.getEventCallbackBuilder(config)
+                .onSuccess().postEvents("sessionOnly").validThisSessionOnly()
+                .onSuccess().postEvents("betweenSessions").validBetweenSessions()
+                .onStatusCodes(200).postEvents("statusSessionOnly").validThisSessionOnly()
+                .build()
+    }
+
+    def "callbacks should be tracked until they complete"() {
+        given:
+        def cb = callback()
+        callback()
+
+        expect:
+        registry.size() == 2
+
+        when:
+        cb.success("s", response)
+
+        then:
+        registry.size() == 1
+    }
+
+    def "session change should drop session only actions of live callbacks"() {
+        given:
+        def cb = callback()
+
+        when:
+        registry.onSessionChanged(false)
+        cb.success("s", response)
+
+        then:
+        registry.size() == 0
+        1 * bus.post("betweenSessions")
+        0 * bus.post("sessionOnly")
+        0 * bus.post("statusSessionOnly")
+    }
+
+    def "session change should cancel requests only if asked"() {
+        given:
+        Cancellable request = Mock()
+        registry.setCancellable(callback(), request)
+
+        when:
+        registry.onSessionChanged(cancel)
+
+        then:
+        cancelCount * request.cancel()
+
+        where:
+        cancel | cancelCount
+        true   | 1
+        false  | 0
+    }
+
+    def "completed callback should not be cancelled"() {
+        given:
+        Cancellable request = Mock()
+        def cb = callback()
+        registry.setCancellable(cb, request)
+        cb.success("s", response)
+
+        when:
+        registry.onSessionChanged(true)
+
+        then:
+        0 * request.cancel()
+    }
+}
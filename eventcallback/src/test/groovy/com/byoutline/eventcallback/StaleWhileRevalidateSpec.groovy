@@ -0,0 +1,83 @@
+package com.byoutline.eventcallback
+
+import retrofit.client.Response
+import spock.lang.Specification
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class StaleWhileRevalidateSpec extends Specification {
+    IBus bus = Mock()
+    Response response = new Response("url", 200, "OK", [], null)
+
+    EventCallbackBuilder<String, String> builder(LastKnownResults<String> results) {
+        return MockFactory.getSameSessionBuilder(new BusProvider(impl: bus))
+                .staleWhileRevalidate(results, "list")
+                .onSuccess().postEvents("done").validBetweenSessions()
+                .onSuccess().postResponseEvents(new ResponseEventImpl<String>()).validThisSessionOnly()
+    }
+
+    def "should post last known result on creation"() {
+        given:
+        def results = new LastKnownResults<String>()
+        builder(results).build().success("old", response)
+
+        when:
+        builder(results).build()
+
+        then:
+        1 * bus.post({ it instanceof ResponseEvent && it.response == "old" })
+        0 * bus.post("done")
+    }
+
+    def "should skip response events if fresh result is equal"() {
+        given:
+        def results = new LastKnownResults<String>()
+        builder(results).build().success("same", response)
+        def cb = builder(results).build()
+
+        when:
+        cb.success(result, response)
+
+        then:
+        1 * bus.post("done")
+        responseEventPosts * bus.post({ it instanceof ResponseEvent && it.response == result })
+
+        where:
+        result    | responseEventPosts
+        "same"    | 0
+        "changed" | 1
+    }
+
+    def "should use comparator to decide if result changed"() {
+        given:
+        def results = new LastKnownResults<String>(String.CASE_INSENSITIVE_ORDER)
+        builder(results).build().success("same", response)
+        def cb = builder(results).build()
+
+        when:
+        cb.success("SAME", response)
+
+        then:
+        0 * bus.post({ it instanceof ResponseEvent && it.response == "SAME" })
+    }
+
+    def "should not post result stored in different session"() {
+        given:
+        def results = new LastKnownResults<String>()
+        def config = MockFactory.getMultiSessionConfig(new BusProvider(impl: bus))
+        def multiSessionBuilder = {
+            MockFactory.getEventCallbackBuilder(config)
+                    .staleWhileRevalidate(results, "list")
+                    .onSuccess().postResponseEvents(new ResponseEventImpl<String>()).validBetweenSessions()
+        }
+        multiSessionBuilder().build().success("old", response)
+
+        when:
+        multiSessionBuilder().build()
+
+        then:
+        0 * bus.post(_)
+    }
+}
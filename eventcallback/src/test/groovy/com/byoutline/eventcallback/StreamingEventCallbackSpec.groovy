@@ -0,0 +1,88 @@
+package com.byoutline.eventcallback
+
+import com.byoutline.eventcallback.metrics.CallbackMetrics
+import com.google.gson.Gson
+import com.google.gson.reflect.TypeToken
+import retrofit.client.Response
+import retrofit.mime.TypedByteArray
+import spock.lang.Specification
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class StreamingEventCallbackSpec extends Specification {
+    IBus bus = Mock()
+    List<ResponseChunk<Integer>> chunks = []
+
+    StreamingEventCallback<Integer, String> callback(String itemsField = null) {
+        def config = MockFactory.getSameSessionConfig(new BusProvider(impl: bus))
+        def template = MockFactory.<Integer, String> getEventCallbackBuilder(config)
+                .onSuccess().postResponseEvents(new ResponseEventImpl<Integer>()).validThisSessionOnly()
+                .onError().postEvents("error").validBetweenSessions()
+                .buildTemplate()
+        def chunkEvents = { new ResponseEventImpl() } as ResponseEventFactory
+        return new StreamingEventCallback<Integer, String>(template, new Gson(), TypeToken.get(Integer),
+                itemsField, 2, chunkEvents)
+    }
+
+    static Response response(String body) {
+        return new Response("url", 200, "OK", [], new TypedByteArray("application/json; charset=UTF-8", body.bytes))
+    }
+
+    def "should post chunks while parsing and item count at the end"() {
+        when:
+        callback().success(null, response("[1, 2, 3, 4, 5]"))
+
+        then:
+        3 * bus.post({ it.response instanceof ResponseChunk }) >> { chunks << it[0].response }
+        then:
+        1 * bus.post({ it.response == 5 })
+        chunks*.items == [[1, 2], [3, 4], [5]]
+        chunks*.firstIndex == [0, 2, 4]
+        chunks*.lastIndex() == [1, 3, 4]
+    }
+
+    def "should read items from given field and skip others"() {
+        when:
+        callback("items").success(null, response('{"page": {"next": 2}, "items": [7, 8], "total": 9}'))
+
+        then:
+        1 * bus.post({ it.response instanceof ResponseChunk && it.response.items == [7, 8] })
+        1 * bus.post({ it.response == 2 })
+    }
+
+    def "chunks should be posted with template metrics and pooled events released by synchronous bus"() {
+        given:
+        CallbackMetrics metrics = Mock()
+        SynchronousBus syncBus = Mock()
+        def config = MockFactory.getSameSessionConfig(syncBus).withMetrics(metrics)
+        def template = MockFactory.<Integer, String> getEventCallbackBuilder(config).endpoint("items")
+                .onSuccess().postEvents("done").validBetweenSessions()
+                .buildTemplate()
+        def pool = new ResponseEventPool<ResponseChunk<Integer>>({ new ResponseEventImpl() } as ResponseEventFactory, 1)
+        def callback = new StreamingEventCallback<Integer, String>(template, new Gson(), TypeToken.get(Integer), 2, pool)
+        def posted = []
+
+        when:
+        callback.success(null, response("[1, 2, 3]"))
+
+        then:
+        2 * syncBus.post({ it instanceof ResponseEvent }) >> { posted << it[0] }
+        1 * syncBus.post("done")
+        3 * metrics.onBusPost("items", 1, { it >= 0 })
+        posted[0].is(posted[1])
+    }
+
+    def "malformed body should execute error actions"() {
+        when:
+        callback().success(null, response(body))
+
+        then:
+        1 * bus.post("error")
+        0 * bus.post({ it instanceof ResponseEvent && it.response == 0 })
+
+        where:
+        body << ['[1, 2, "x"', '{"items": []}', '[1, {}]']
+    }
+}
@@ -0,0 +1,83 @@
+package com.byoutline.eventcallback.circuitbreaker
+
+import com.byoutline.eventcallback.util.Clock
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class CircuitBreakerSpec extends Specification {
+    long now = 0
+    CircuitBreakers breakers = new CircuitBreakers(0.5, 4, 10, 30, TimeUnit.SECONDS, { now } as Clock)
+    CircuitBreaker breaker = breakers.forEndpoint("user")
+
+    def "should open when failure rate exceeds threshold after minimum calls"() {
+        when:
+        breaker.onSuccess()
+        breaker.onFailure()
+        breaker.onFailure()
+
+        then:
+        breaker.state == CircuitBreaker.State.CLOSED
+        breaker.allowRequest()
+
+        when:
+        breaker.onSuccess()
+        breaker.onFailure()
+
+        then:
+        breaker.state == CircuitBreaker.State.OPEN
+        !breaker.allowRequest()
+    }
+
+    def "calls older than window should not count"() {
+        when:
+        3.times { breaker.onFailure() }
+        now = TimeUnit.SECONDS.toNanos(11)
+        breaker.onFailure()
+
+        then:
+        breaker.state == CircuitBreaker.State.CLOSED
+    }
+
+    def "should allow single trial call after open duration"() {
+        given:
+        4.times { breaker.onFailure() }
+
+        when:
+        now = TimeUnit.SECONDS.toNanos(30)
+
+        then:
+        breaker.allowRequest()
+        breaker.state == CircuitBreaker.State.HALF_OPEN
+        !breaker.allowRequest()
+    }
+
+    def "trial call result should close or reopen breaker"() {
+        given:
+        4.times { breaker.onFailure() }
+        now = TimeUnit.SECONDS.toNanos(30)
+        breaker.allowRequest()
+
+        when:
+        success ? breaker.onSuccess() : breaker.onFailure()
+
+        then:
+        breaker.state == expectedState
+        breaker.allowRequest() == success
+
+        where:
+        success | expectedState
+        true    | CircuitBreaker.State.CLOSED
+        false   | CircuitBreaker.State.OPEN
+    }
+
+    def "breakers should be kept per endpoint"() {
+        expect:
+        breakers.forEndpoint("user").is(breaker)
+        !breakers.forEndpoint("items").is(breaker)
+    }
+}
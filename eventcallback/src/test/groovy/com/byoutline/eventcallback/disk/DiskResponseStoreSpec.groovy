@@ -0,0 +1,149 @@
+package com.byoutline.eventcallback.disk
+
+import com.byoutline.eventcallback.BusProvider
+import com.byoutline.eventcallback.CallInvoker
+import com.byoutline.eventcallback.EventCallbackTemplate
+import com.byoutline.eventcallback.IBus
+import com.byoutline.eventcallback.MockFactory
+import com.byoutline.eventcallback.ResponseEventImpl
+import com.byoutline.eventcallback.util.WallClock
+import com.google.gson.Gson
+import com.google.gson.reflect.TypeToken
+import retrofit.Callback
+import retrofit.client.Response
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class DiskResponseStoreSpec extends Specification {
+    long now = 1000
+    WallClock clock = { now } as WallClock
+    File file
+    DiskResponseStore store
+    ResultCodec<String> codec = new GsonResultCodec<String>(new Gson(), TypeToken.get(String))
+
+    def setup() {
+        file = File.createTempFile("responses", ".log")
+        file.deleteOnExit()
+        store = new DiskResponseStore(file, 64, clock)
+    }
+
+    def cleanup() {
+        store.close()
+        file.delete()
+    }
+
+    def "stored results should survive reopening"() {
+        given:
+        store.put("a", "first", codec)
+        store.put("b", "second", codec)
+        store.put("a", "updated", codec)
+        store.remove("b")
+        store.close()
+
+        when:
+        store = new DiskResponseStore(file, 64, clock)
+
+        then:
+        store.size() == 1
+        store.get("a", codec) == "updated"
+        store.get("b", codec) == null
+    }
+
+    def "log should grow when records do not fit"() {
+        given:
+        def value = "x" * 200
+
+        when:
+        store.put("big", value, codec)
+
+        then:
+        store.get("big", codec) == value
+        file.length() >= 256
+    }
+
+    def "compaction should drop overwritten records"() {
+        given:
+        10.times { store.put("a", "value " + it, codec) }
+        store.put("b", "other", codec)
+
+        when:
+        store.compact()
+
+        then:
+        store.logSize() == 2 * 16 + 2 + '"value 9"'.length() + '"other"'.length()
+        store.get("a", codec) == "value 9"
+        store.get("b", codec) == "other"
+    }
+
+    def "record without key length should be ignored on load"() {
+        given:
+        store.put("a", "kept", codec)
+        int end = store.logSize()
+        store.close()
+        def raf = new RandomAccessFile(file, "rw")
+        raf.seek(end + 4)
+        raf.writeInt(6)
+        raf.writeLong(now)
+        raf.write('b"torn"'.bytes)
+        raf.close()
+
+        when:
+        store = new DiskResponseStore(file, 64, clock)
+        store.put("c", "next", codec)
+        store.close()
+        store = new DiskResponseStore(file, 64, clock)
+
+        then:
+        store.size() == 2
+        store.get("a", codec) == "kept"
+        store.get("c", codec) == "next"
+    }
+
+    def "call should replay stored result without network"() {
+        given:
+        IBus bus = Mock()
+        EventCallbackTemplate<String, String> template = MockFactory.getSameSessionBuilder(new BusProvider(impl: bus))
+                .onSuccess().postResponseEvents(new ResponseEventImpl<String>()).validThisSessionOnly()
+                .buildTemplate()
+        List<Callback<String>> started = []
+        def invoker = { started << it } as CallInvoker<String>
+        store.call("user/1", template, codec, 1, TimeUnit.MINUTES, invoker)
+        started[0].success("fetched", new Response("url", 200, "OK", [], null))
+
+        when:
+        def hit = store.call("user/1", template, codec, 1, TimeUnit.MINUTES, invoker)
+
+        then:
+        hit
+        started.size() == 1
+        1 * bus.post({ it.response == "fetched" })
+    }
+
+    def "call should fetch result again when stored one is too old"() {
+        given:
+        IBus bus = Mock()
+        EventCallbackTemplate<String, String> template = MockFactory.getSameSessionBuilder(new BusProvider(impl: bus))
+                .onSuccess().postResponseEvents(new ResponseEventImpl<String>()).validThisSessionOnly()
+                .buildTemplate()
+        store.put("user/1", "old", codec)
+        List<Callback<String>> started = []
+        def invoker = { started << it } as CallInvoker<String>
+        now += TimeUnit.MINUTES.toMillis(1) + 1
+
+        when:
+        def hit = store.call("user/1", template, codec, 1, TimeUnit.MINUTES, invoker)
+        started[0].success("fetched", new Response("url", 200, "OK", [], null))
+
+        then:
+        !hit
+        0 * bus.post({ it.response == "old" })
+        1 * bus.post({ it.response == "fetched" })
+        store.get("user/1", codec) == "fetched"
+        store.storedMillis("user/1") == now
+    }
+}
@@ -0,0 +1,61 @@
+package com.byoutline.eventcallback.internal
+
+import spock.lang.Specification
+
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class SerialExecutorSpec extends Specification {
+
+    def "should run tasks in submission order"() {
+        given:
+        def ran = []
+        def executor = new SerialExecutor({ it.run() } as Executor)
+
+        when:
+        (1..3).each { i -> executor.execute({ ran << i } as Runnable) }
+
+        then:
+        ran == [1, 2, 3]
+    }
+
+    def "rejected task should run on submitting thread before later tasks"() {
+        given:
+        def ran = []
+        def reject = true
+        def executor = new SerialExecutor({ task ->
+            if (reject) {
+                reject = false
+                throw new RejectedExecutionException()
+            }
+            task.run()
+        } as Executor)
+
+        when:
+        executor.execute({ ran << [1, Thread.currentThread()] } as Runnable)
+        executor.execute({ ran << [2, Thread.currentThread()] } as Runnable)
+
+        then:
+        notThrown(RejectedExecutionException)
+        ran == [[1, Thread.currentThread()], [2, Thread.currentThread()]]
+    }
+
+    def "tasks should still run after executor was shut down"() {
+        given:
+        def ran = []
+        def pool = Executors.newSingleThreadExecutor()
+        def executor = new SerialExecutor(pool)
+        pool.shutdown()
+
+        when:
+        (1..3).each { i -> executor.execute({ ran << i } as Runnable) }
+
+        then:
+        ran == [1, 2, 3]
+    }
+}
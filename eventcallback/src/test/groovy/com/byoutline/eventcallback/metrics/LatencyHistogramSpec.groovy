@@ -0,0 +1,44 @@
+package com.byoutline.eventcallback.metrics
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ *
+ * @author Sebastian Kacprzak <sebastian.kacprzak at byoutline.com>
+ */
+class LatencyHistogramSpec extends Specification {
+
+    @Unroll
+    def "bucket of #value should contain it with at most 1/32 error"() {
+        when:
+        def highest = LatencyHistogram.highestValueInBucket(LatencyHistogram.bucketIndex(value))
+
+        then:
+        highest >= value
+        highest - value <= value / 32
+
+        where:
+        value << [0L, 1L, 31L, 32L, 33L, 1000L, 123456789L, Long.MAX_VALUE]
+    }
+
+    def "should report percentiles of recorded values"() {
+        given:
+        def histogram = new LatencyHistogram()
+
+        when:
+        (1..100).each { histogram.record(it * 1000L) }
+
+        then:
+        histogram.totalCount == 100
+        histogram.max == 100000
+        Math.abs(histogram.getValueAtPercentile(50) - 50000) <= 50000 / 32
+        Math.abs(histogram.getValueAtPercentile(99) - 99000) <= 99000 / 32
+        histogram.getValueAtPercentile(100) == 100000
+    }
+
+    def "empty histogram should report zero"() {
+        expect:
+        new LatencyHistogram().getValueAtPercentile(99) == 0
+    }
+}